@@ -0,0 +1,322 @@
+package converter;
+
+import indexer.WavIndexer;
+import model.BatchConversionEntry;
+import model.CompiledDecibelMap;
+import output.OutputFormats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Convert many wav files at once, each into the same relative path under an output
+ * directory.
+ *
+ * Files are converted in parallel on a fixed number of threads, all sharing one
+ * compiled decibel map. Files that fail to convert are listed with an error instead
+ * of failing the run.
+ */
+public class BatchConverter {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final int threads;
+    private String format;
+    private int bitWidth;
+    private CompiledDecibelMap dbMap;
+    private boolean memoryMapped;
+    private int bufferSize;
+    private int flushSize;
+
+    public BatchConverter(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    String.format("Unexpected number of threads %d.", threads));
+        }
+
+        this.threads = threads;
+        this.format = OutputFormats.BINARY;
+        this.dbMap = CompiledDecibelMap.EMPTY;
+    }
+
+    /**
+     * Convert the wav files given by sources: wav files, directories searched
+     * recursively, or glob patterns such as "sound/**.wav". Entries are listed in
+     * the order of the sources, the files of each source in path order.
+     */
+    public List<BatchConversionEntry> convert(final List<String> sources, final Path outputRoot)
+            throws Exception {
+        final Map<Path, Path> outputPaths = findOutputPaths(sources, outputRoot,
+                OutputFormats.getFileExtension(this.format));
+        final List<Future<BatchConversionEntry>> futures =
+                new ArrayList<Future<BatchConversionEntry>>(outputPaths.size());
+        final List<BatchConversionEntry> entries =
+                new ArrayList<BatchConversionEntry>(outputPaths.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+        try {
+            for (final Map.Entry<Path, Path> outputPath : outputPaths.entrySet()) {
+                futures.add(executor.submit(new Callable<BatchConversionEntry>() {
+                    @Override
+                    public BatchConversionEntry call() {
+                        return convertFile(outputPath.getKey(), outputPath.getValue());
+                    }
+                }));
+            }
+
+            for (final Future<BatchConversionEntry> future : futures) {
+                entries.add(future.get());
+            }
+        } catch (final ExecutionException e) {
+            throw new Exception("Failed to convert wav files.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Output path of every wav file of the sources, keyed by wav path. The path of
+     * a wav file relative to its source directory is kept under outputRoot, with
+     * the extension of the format. A wav file found by several sources is converted
+     * once, as found by the first.
+     */
+    public static Map<Path, Path> findOutputPaths(final List<String> sources,
+            final Path outputRoot, final String extension) throws Exception {
+        final Map<Path, Path> outputPaths = new LinkedHashMap<Path, Path>();
+        final Map<Path, Path> wavPaths = new HashMap<Path, Path>();
+        final Set<Path> foundWavPaths = new HashSet<Path>();
+
+        for (final String source : sources) {
+            final Path root = getSourceRoot(source);
+            final List<Path> sourceWavPaths = findWavFiles(source, root);
+
+            if (sourceWavPaths.isEmpty()) {
+                throw new Exception(String.format("No wav files match %s.", source));
+            }
+
+            for (final Path wavPath : sourceWavPaths) {
+                if (!foundWavPaths.add(wavPath.toAbsolutePath().normalize())) {
+                    continue;
+                }
+
+                final Path relativePath = root.relativize(wavPath);
+                final Path outputPath = outputRoot.resolve(relativePath).resolveSibling(
+                        getOutputFileName(relativePath.getFileName().toString(), extension));
+                final Path otherWavPath = wavPaths.put(outputPath, wavPath);
+
+                if (otherWavPath != null) {
+                    throw new Exception(String.format(
+                            "Wav files %s and %s would both be converted to %s.",
+                            otherWavPath, wavPath, outputPath));
+                }
+
+                outputPaths.put(wavPath, outputPath);
+            }
+        }
+
+        return outputPaths;
+    }
+
+    private BatchConversionEntry convertFile(final Path wavPath, final Path outputPath) {
+        final BatchConversionEntry entry = new BatchConversionEntry();
+        final long startTime = System.nanoTime();
+
+        entry.setPath(wavPath.toString());
+        entry.setOutputPath(outputPath.toString());
+
+        try {
+            final Path outputDirectory = outputPath.getParent();
+
+            if (outputDirectory != null) {
+                Files.createDirectories(outputDirectory);
+            }
+
+            final Converter converter = new Converter(wavPath.toFile(), outputPath.toFile());
+
+            converter.setDecibelMap(this.dbMap);
+            converter.setFormat(this.format);
+            converter.setBitWidth(String.valueOf(this.bitWidth));
+            converter.setMemoryMapped(this.memoryMapped);
+            converter.setBufferSize(this.bufferSize);
+            converter.setFlushSize(this.flushSize);
+            converter.setQuiet(true);
+
+            converter.convert();
+
+            entry.setVerilogNumberCount(converter.getVerilogNumberCount());
+            entry.setMinDecibel(converter.getMinDecibel());
+            entry.setMaxDecibel(converter.getMaxDecibel());
+        } catch (final Exception e) {
+            entry.setError(String.valueOf(e.getMessage()));
+        }
+
+        entry.setSeconds((System.nanoTime() - startTime) / 1e9);
+
+        return entry;
+    }
+
+    /**
+     * Directory the relative paths of the wav files of a source start from: the
+     * source itself for a directory, the parent for a file, and the part before
+     * the first glob character for a pattern.
+     */
+    private static Path getSourceRoot(final String source) {
+        if (isGlob(source)) {
+            final String[] names = source.split("[/\\\\]");
+            Path root = Paths.get("");
+
+            for (int i = 0; i < names.length - 1 && !isGlob(names[i]); ++i) {
+                root = i == 0 && names[i].isEmpty() ? Paths.get(File.separator)
+                        : root.resolve(names[i]);
+            }
+
+            return root;
+        }
+
+        final Path path = Paths.get(source);
+
+        if (Files.isDirectory(path)) {
+            return path;
+        }
+
+        return path.getParent() != null ? path.getParent() : Paths.get("");
+    }
+
+    private static List<Path> findWavFiles(final String source, final Path root)
+            throws IOException {
+        if (!isGlob(source)) {
+            final Path path = Paths.get(source);
+
+            if (Files.isDirectory(path)) {
+                return WavIndexer.findWavFiles(path);
+            }
+
+            return Files.isRegularFile(path) ? Collections.singletonList(path)
+                    : Collections.<Path>emptyList();
+        }
+
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + source);
+        final List<Path> wavPaths = new ArrayList<Path>();
+
+        if (!Files.isDirectory(root.toAbsolutePath())) {
+            return wavPaths;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && matcher.matches(file)) {
+                    wavPaths.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(wavPaths);
+
+        return wavPaths;
+    }
+
+    private static boolean isGlob(final String text) {
+        for (int i = 0; i < GLOB_CHARACTERS.length(); ++i) {
+            if (text.indexOf(GLOB_CHARACTERS.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String getOutputFileName(final String wavFileName, final String extension) {
+        final int dot = wavFileName.lastIndexOf('.');
+        final String baseName = dot > 0 ? wavFileName.substring(0, dot) : wavFileName;
+
+        return baseName + "." + extension;
+    }
+
+    public String getFormat() {
+        return this.format;
+    }
+
+    public void setFormat(final String format) throws Exception {
+        if (!OutputFormats.isSupported(format)) {
+            throw new Exception(String.format("Unexpected format %s.", format));
+        }
+
+        this.format = format;
+    }
+
+    public int getBitWidth() {
+        return this.bitWidth;
+    }
+
+    public void setBitWidth(final int bitWidth) {
+        this.bitWidth = bitWidth;
+    }
+
+    public CompiledDecibelMap getDecibelMap() {
+        return this.dbMap;
+    }
+
+    /**
+     * Map shared by the conversions of every file.
+     */
+    public void setDecibelMap(final CompiledDecibelMap dbMap) {
+        this.dbMap = dbMap;
+    }
+
+    public boolean isMemoryMapped() {
+        return this.memoryMapped;
+    }
+
+    public void setMemoryMapped(final boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    public void setBufferSize(final int bufferSize) throws Exception {
+        if (bufferSize < 0) {
+            throw new Exception(String.format("Unexpected buffer size %d.", bufferSize));
+        }
+
+        this.bufferSize = bufferSize;
+    }
+
+    public int getFlushSize() {
+        return this.flushSize;
+    }
+
+    public void setFlushSize(final int flushSize) throws Exception {
+        if (flushSize < 0) {
+            throw new Exception(String.format("Unexpected flush size %d.", flushSize));
+        }
+
+        this.flushSize = flushSize;
+    }
+}
@@ -1,20 +1,32 @@
 package converter;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import model.DecibelMap;
+import model.CompiledDecibelMap;
+import output.ChannelOutputSink;
+import output.EncodedNumberTable;
+import output.MemoryOutputSink;
+import output.OutputEncoder;
+import output.OutputFormats;
+import output.OutputSink;
+import output.ReadmemEncoder;
+import output.WriteBehindOutputSink;
+import sound.PositionalWavReader;
 import sound.WavFile;
+import sound.WavHeader;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Convert wav file to db level integer file.
@@ -24,133 +36,490 @@ import java.util.Map;
  */
 public class Converter {
     private static final int BUFFER_SIZE = 1024;
+    private static final int CHUNK_FRAMES = 16 * BUFFER_SIZE;
+    private static final int UNMAPPED_SAMPLE = Integer.MIN_VALUE;
 
     private final File wavFile;
-    private final File outputFile;
-    private String format;
-    private int bitWidth;
-    private File mapFile;
+    private final InputStream wavStream;
+    private final OutputTarget output;
+    private final List<OutputTarget> additionalOutputs;
+    private boolean memoryMapped;
+    private int bufferSize;
+    private int readAheadBuffers;
+    private long startFrame;
+    private long endFrame;
+    private int threads;
+    private boolean positionalOutput;
+    private int flushSize;
+    private int writeBehindBuffers;
+    private boolean quiet;
+    private long verilogNumberCount;
 
-    private Map<String, Integer> dbMap;
+    private double minValue;
+    private double maxValue;
 
     public Converter(final File wavFile, final File outputFile) {
+        this(wavFile, null, new OutputTarget(outputFile));
+    }
+
+    /**
+     * Convert wav data read from a stream, such as standard input.
+     */
+    public Converter(final InputStream wavStream, final File outputFile) {
+        this(null, wavStream, new OutputTarget(outputFile));
+    }
+
+    /**
+     * Convert to a sink, such as standard output or memory. The sink is closed when
+     * the conversion ends.
+     */
+    public Converter(final File wavFile, final OutputSink outputSink) {
+        this(wavFile, null, new OutputTarget(outputSink));
+    }
+
+    public Converter(final InputStream wavStream, final OutputSink outputSink) {
+        this(null, wavStream, new OutputTarget(outputSink));
+    }
+
+    private Converter(final File wavFile, final InputStream wavStream,
+            final OutputTarget output) {
         this.wavFile = wavFile;
-        this.outputFile = outputFile;
+        this.wavStream = wavStream;
+        this.output = output;
+        this.additionalOutputs = new ArrayList<OutputTarget>();
 
-        this.dbMap = new HashMap<String, Integer>();
+        this.endFrame = -1;
+        this.threads = 1;
     }
 
     public void convert() throws Exception {
-        final List<Integer> verilogNumbers = new ArrayList<Integer>();
-        final WavFile wavFile = WavFile.openWavFile(this.wavFile);
+        final WavFile wavFile = this.openWavFile();
+        final Statistics statistics;
+
+        try {
+            final long endFrame = this.getEndFrame(wavFile);
+
+            // Display information about the wav file
+            if (!this.quiet) {
+                wavFile.display();
+            }
+
+            if (this.startFrame > endFrame) {
+                throw new Exception(String.format("Start frame %d is after end frame %d.",
+                        this.startFrame, endFrame));
+            }
+
+            // Skip straight to the first frame of the range
+            wavFile.seekToFrame(this.startFrame);
+
+            statistics = this.convertRange(wavFile, endFrame);
+        } finally {
+            wavFile.close();
+        }
+
+        this.setDecibelRange(wavFile.getHeader(), statistics);
+        this.verilogNumberCount = statistics.verilogNumberCount;
+
+        if (this.quiet) {
+            return;
+        }
+
+        System.out.printf("Min decibel: %f%n", this.getMinDecibel());
+        System.out.printf("Max decibel: %f%n", this.getMaxDecibel());
+
+        // Output information
+        System.out.printf("Verilog number count: %d%n", this.verilogNumberCount);
+        System.out.println("Finished.");
+    }
+
+    /**
+     * Convert the frames from the current position up to endFrame into every
+     * output, deleting the output files if the conversion fails.
+     */
+    private Statistics convertRange(final WavFile wavFile, final long endFrame)
+            throws Exception {
+        try {
+            final List<MappedOutput> outputs = new ArrayList<MappedOutput>();
+
+            for (final OutputTarget target : this.getOutputs()) {
+                outputs.add(new MappedOutput(target, wavFile.getHeader()));
+            }
+
+            if (this.positionalOutput && this.wavStream == null && outputs.size() == 1
+                    && outputs.get(0).isPositional()) {
+                return this.convertPositional(endFrame, outputs.get(0));
+            }
+
+            return this.convertOrdered(wavFile, endFrame, outputs);
+        } catch (final Exception e) {
+            // Do not leave partial output files behind
+            for (final OutputTarget target : this.getOutputs()) {
+                if (target.getOutputFile() != null) {
+                    target.getOutputFile().delete();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write every output in order, each through its own sink. The wav data is
+     * decoded once, and each block is mapped and encoded for every output.
+     */
+    private Statistics convertOrdered(final WavFile wavFile, final long endFrame,
+            final List<MappedOutput> outputs) throws Exception {
+        // Each block is written out as soon as it is mapped, so memory use does not
+        // depend on the length of the input
+        final OutputSink[] sinks = new OutputSink[outputs.size()];
+        final OutputEncoder[] encoders = new OutputEncoder[outputs.size()];
+        final Statistics statistics;
+
+        try {
+            for (int i = 0; i < sinks.length; ++i) {
+                sinks[i] = this.openOutputSink(outputs.get(i).target);
+                encoders[i] = outputs.get(i).createEncoder(sinks[i]);
+            }
+
+            for (final OutputEncoder encoder : encoders) {
+                encoder.begin(wavFile.getHeader().isNumFramesKnown()
+                        ? (endFrame - this.startFrame) * wavFile.getNumChannels() : -1);
+            }
+
+            // Standard input can only be read in order
+            if (this.threads > 1 && this.wavStream == null) {
+                statistics = this.convertParallel(endFrame, outputs, sinks, encoders);
+            } else {
+                statistics = this.convertSequential(wavFile, endFrame, outputs, encoders);
+            }
+
+            for (final OutputEncoder encoder : encoders) {
+                encoder.end();
+            }
+        } finally {
+            closeOutputSinks(sinks);
+        }
+
+        return statistics;
+    }
+
+    private Statistics convertSequential(final WavFile wavFile, final long endFrame,
+            final List<MappedOutput> outputs, final OutputEncoder[] encoders)
+            throws Exception {
         final int numChannels = wavFile.getNumChannels();
-        final double[] buffer = new double[numChannels * BUFFER_SIZE];
+        final BlockConverter block = new BlockConverter(wavFile.getHeader(), outputs);
+        long frame = this.startFrame;
         int framesRead;
-        double minValue = 1;
-        double maxValue = 0;
-
-        // Display information about the wav file
-        wavFile.display();
 
         do {
-            framesRead = wavFile.readFrames(buffer, BUFFER_SIZE);
+            framesRead = block.read(wavFile, (int) Math.min(BUFFER_SIZE, endFrame - frame));
+            frame += framesRead;
 
-            for (int s = 0; s < framesRead * numChannels; ++s) {
-                int verilogNumber;
-                double dbLevel;
-                final double amplitude = buffer[s];
-                final double amplitudeNormalized = (amplitude + 1) / 2;
+            final int numSamples = framesRead * numChannels;
 
-                dbLevel = this.getDecibelLevel(amplitudeNormalized);
-                verilogNumber = this.getVerilogNumber(dbLevel);
-                verilogNumbers.add(verilogNumber);
+            block.map(numSamples);
+            block.write(encoders, numSamples);
+        } while (framesRead != 0);
 
-                minValue = Math.min(minValue, amplitudeNormalized);
-                maxValue = Math.max(amplitudeNormalized, maxValue);
+        return block.statistics;
+    }
+
+    /**
+     * Convert chunks of frames on a pool of threads. Chunks are written in the order
+     * of their frames, and only a few more chunks than threads are in flight, so
+     * the output matches a sequential run and memory use stays bounded.
+     *
+     * Chunks of $readmem text are encoded by their own thread and copied to the
+     * sink. Other formats carry headers, addresses or packed bits across chunks, so
+     * their chunks keep the Verilog numbers for the encoder of the output.
+     */
+    private Statistics convertParallel(final long endFrame, final List<MappedOutput> outputs,
+            final OutputSink[] sinks, final OutputEncoder[] encoders) throws Exception {
+        final PositionalWavReader reader = PositionalWavReader.open(this.wavFile);
+        final ForkJoinPool pool = new ForkJoinPool(this.threads);
+        final Deque<ChunkConversion> pending = new ArrayDeque<ChunkConversion>();
+        final Statistics statistics = new Statistics();
+        long frame = this.startFrame;
+
+        try {
+            while (frame < endFrame || !pending.isEmpty()) {
+                while (frame < endFrame && pending.size() < 2 * this.threads) {
+                    final long chunkEndFrame = Math.min(frame + CHUNK_FRAMES, endFrame);
+                    final ChunkConversion chunk =
+                            new ChunkConversion(reader, outputs, frame, chunkEndFrame);
+
+                    pool.execute(chunk);
+                    pending.addLast(chunk);
+                    frame = chunkEndFrame;
+                }
+
+                final ChunkConversion chunk = pending.removeFirst();
+
+                chunk.join();
+
+                // The first error in frame order, as a sequential run would raise it
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+
+                for (int i = 0; i < sinks.length; ++i) {
+                    if (chunk.texts[i] != null) {
+                        sinks[i].write(chunk.texts[i].getBuffer());
+                    } else {
+                        encoders[i].encode(chunk.verilogNumbers[i].verilogNumbers, 0,
+                                chunk.verilogNumbers[i].count);
+                    }
+                }
+
+                statistics.add(chunk.block.statistics);
             }
-        } while (framesRead != 0);
+        } finally {
+            pool.shutdownNow();
+            reader.close();
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Convert ranges of frames on a pool of threads, each writing its lines straight
+     * to their place in the output file. Every line has the same length, so the
+     * offset of the first line of a range is known before any line is encoded.
+     */
+    private Statistics convertPositional(final long endFrame, final MappedOutput output)
+            throws Exception {
+        final PositionalWavReader reader = PositionalWavReader.open(this.wavFile);
+        final FileChannel channel = FileChannel.open(output.target.getOutputFile().toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        final ForkJoinPool pool = new ForkJoinPool(this.threads);
+
+        try {
+            final long frameLength =
+                    reader.getHeader().getNumChannels() * output.lineTable.getTextLength();
+            final long outputSize = (endFrame - this.startFrame) * frameLength;
+
+            // Size the file up front, workers fill it in any order
+            if (outputSize > 0) {
+                channel.write(ByteBuffer.allocate(1), outputSize - 1);
+            }
+
+            final RangeConversion conversion = new RangeConversion(reader, output, channel,
+                    frameLength, this.startFrame, endFrame, new AtomicLong(Long.MAX_VALUE));
+
+            pool.invoke(conversion);
+
+            if (conversion.error != null) {
+                throw conversion.error;
+            }
+
+            return conversion.statistics;
+        } finally {
+            pool.shutdownNow();
+            channel.close();
+            reader.close();
+        }
+    }
+
+    private void convertFrames(final PositionalWavReader reader, final long startFrame,
+            final long endFrame, final BlockConverter block, final OutputEncoder[] encoders)
+            throws Exception {
+        final int numChannels = reader.getHeader().getNumChannels();
+        long frame = startFrame;
+
+        while (frame < endFrame) {
+            final int framesRead = block.read(reader, frame,
+                    (int) Math.min(BUFFER_SIZE, endFrame - frame));
+            final int numSamples = framesRead * numChannels;
+
+            block.map(numSamples);
+            block.write(encoders, numSamples);
+            frame += framesRead;
+        }
 
-        System.out.printf("Min decibel: %f%n", this.getDecibelLevel(minValue));
-        System.out.printf("Max decibel: %f%n", this.getDecibelLevel(maxValue));
+        for (final OutputEncoder encoder : encoders) {
+            encoder.end();
+        }
+    }
 
-        wavFile.close();
+    private OutputSink openOutputSink(final OutputTarget target) throws IOException {
+        final int flushSize =
+                this.flushSize > 0 ? this.flushSize : ChannelOutputSink.DEFAULT_FLUSH_SIZE;
+        final OutputSink sink = target.getOutputSink() != null ? target.getOutputSink()
+                : ChannelOutputSink.openFile(target.getOutputFile(), flushSize);
+
+        if (this.writeBehindBuffers > 0) {
+            return new WriteBehindOutputSink(sink, flushSize, this.writeBehindBuffers);
+        }
 
-        this.saveOutput(verilogNumbers);
+        return sink;
     }
 
-    private void saveOutput(final List<Integer> verilogNumbers) throws Exception {
-        final BufferedWriter writer = new BufferedWriter(new FileWriter(this.outputFile));
+    /**
+     * Close every sink that was opened, raising the first error after trying all.
+     */
+    private static void closeOutputSinks(final OutputSink[] sinks) throws IOException {
+        IOException error = null;
 
-        for (final int verilogNumber : verilogNumbers) {
-            final String verilogNumberText = this.getIntegerToVerilogNumber(verilogNumber);
+        for (final OutputSink sink : sinks) {
+            try {
+                if (sink != null) {
+                    sink.close();
+                }
+            } catch (final IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
 
-            writer.write(verilogNumberText);
-            writer.newLine();
+        if (error != null) {
+            throw error;
         }
+    }
 
-        writer.close();
+    private void setDecibelRange(final WavHeader header, final Statistics statistics) {
+        this.minValue = statistics.minValue;
+        this.maxValue = statistics.maxValue;
 
-        // Output information
-        System.out.printf("Verilog number count: %d%n", verilogNumbers.size());
-        System.out.println("Finished.");
+        // The normalised amplitude is monotonic in the sample, so its extremes are
+        // at the extreme samples. It falls as the sample grows for 32 bit input.
+        if (this.hasSampleMapping(header) && statistics.verilogNumberCount > 0) {
+            final double minSampleValue = getAmplitudeNormalized(header, statistics.minSample);
+            final double maxSampleValue = getAmplitudeNormalized(header, statistics.maxSample);
+
+            this.minValue = Math.min(this.minValue, Math.min(minSampleValue, maxSampleValue));
+            this.maxValue = Math.max(Math.max(minSampleValue, maxSampleValue), this.maxValue);
+        }
     }
 
-    private void parseDecibelMap() {
-        final ObjectMapper mapper = new ObjectMapper();
+    private boolean hasSampleMapping(final WavHeader header) {
+        return !header.isFloatingPoint() && header.getBytesPerSample() <= 4;
+    }
 
-        try {
-            final DecibelMap originalDbMap =
-                    mapper.readValue(this.getMapFile(), DecibelMap.class);
+    private static int getMinSample(final WavHeader header) {
+        // 8 bit data is unsigned, wider data is signed
+        if (header.getBytesPerSample() == 1) {
+            return 0;
+        }
 
-            this.dbMap = DecibelMapConverter.getConvertedDecibelMap(originalDbMap);
-        } catch (final JsonParseException e) {
-            System.err.println("Error: Failed to parse Json.");
-        } catch (final JsonMappingException e) {
-            System.err.println("Error: Failed to map Json.");
-        } catch (final IOException e) {
-            System.err.println("Error: Failed to open Json file.");
+        return (int) -(1L << 8 * header.getBytesPerSample() - 1);
+    }
+
+    private static int getMaxSample(final WavHeader header) {
+        if (header.getBytesPerSample() == 1) {
+            return 255;
         }
+
+        return (int) ((1L << 8 * header.getBytesPerSample() - 1) - 1);
     }
 
-    private String getIntegerToVerilogNumber(final int num) throws Exception {
-        if (this.format.equals("binary")) {
-            return this.getPaddedNumber(Integer.toBinaryString(num));
-        } else if (this.format.equals("hex")) {
-            return this.getPaddedNumber(Integer.toHexString(num));
-        } else {
-            throw new Exception(String.format("Unexpected format %s.", this.format));
+    private static double getAmplitudeNormalized(final WavHeader header, final long sample) {
+        return (header.getNormalizedSample(sample) + 1) / 2;
+    }
+
+    /**
+     * Verilog numbers of all raw samples, from the smallest one up. Samples without
+     * a map are UNMAPPED_SAMPLE, the error is only raised if one of them is read.
+     */
+    private int[] createSampleTable(final WavHeader header, final CompiledDecibelMap dbMap) {
+        final int minSample = getMinSample(header);
+        final int[] sampleTable = new int[1 << 8 * header.getBytesPerSample()];
+
+        for (int i = 0; i < sampleTable.length; ++i) {
+            final double dbLevel =
+                    this.getDecibelLevel(getAmplitudeNormalized(header, minSample + i));
+
+            try {
+                sampleTable[i] = dbMap.getVerilogNumber(dbLevel);
+            } catch (final Exception e) {
+                sampleTable[i] = UNMAPPED_SAMPLE;
+            }
         }
+
+        return sampleTable;
     }
 
-    private int getVerilogNumber(final double dbLevel) throws Exception {
-        String dbLevelText;
+    /**
+     * Split the sample range into runs of samples that round to the same decibel
+     * level. The level is monotonic in the sample, so the end of each run is found
+     * by a binary search over the samples, using the same arithmetic as the
+     * decibel map lookup.
+     */
+    private SampleThresholds createSampleThresholds(final WavHeader header,
+            final CompiledDecibelMap dbMap) {
+        final List<Integer> runStarts = new ArrayList<Integer>();
+        final List<Integer> runVerilogNumbers = new ArrayList<Integer>();
+        final long maxSample = getMaxSample(header);
+        long start = getMinSample(header);
 
+        while (start <= maxSample) {
+            final double dbLevel = this.getDecibelLevel(getAmplitudeNormalized(header, start));
+            final long dbKey = getDecibelKey(dbLevel);
+            long low = start;
+            long high = maxSample;
+
+            // Last sample of the run
+            while (low < high) {
+                final long middle = low + (high - low + 1) / 2;
+
+                if (getDecibelKey(this.getDecibelLevel(
+                        getAmplitudeNormalized(header, middle))) == dbKey) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            runStarts.add((int) start);
+
+            try {
+                runVerilogNumbers.add(dbMap.getVerilogNumber(dbLevel));
+            } catch (final Exception e) {
+                runVerilogNumbers.add(UNMAPPED_SAMPLE);
+            }
+
+            start = low + 1;
+        }
+
+        return new SampleThresholds(runStarts, runVerilogNumbers);
+    }
+
+    /**
+     * The decibel level as the decibel map rounds it, Long.MIN_VALUE for -Infinity.
+     */
+    private static long getDecibelKey(final double dbLevel) {
         if (Double.isInfinite(dbLevel)) {
-            dbLevelText = "-Infinity";
-        } else {
-            dbLevelText = String.valueOf((int) Math.round(dbLevel));
+            return Long.MIN_VALUE;
         }
 
-        if (this.dbMap.containsKey(dbLevelText)) {
-            return this.dbMap.get(dbLevelText);
-        } else if (this.dbMap.containsKey("Others")) {
-            return this.dbMap.get("Others");
+        return (int) Math.round(dbLevel);
+    }
+
+    private WavFile openWavFile() throws Exception {
+        final WavFile wavFile;
+
+        if (this.wavStream != null) {
+            wavFile = WavFile.openWavFile(this.wavStream);
         } else {
-            throw new Exception(
-                    String.format("No map for decibel level %s", dbLevelText));
+            wavFile = WavFile.openWavFile(this.wavFile, this.memoryMapped);
         }
-    }
 
-    private String getPaddedNumber(final String num) {
-        final StringBuilder sb = new StringBuilder();
+        if (!wavFile.isMemoryMapped() && (this.bufferSize > 0 || this.readAheadBuffers > 0)) {
+            final int bufferSize =
+                    this.bufferSize > 0 ? this.bufferSize : wavFile.getBufferSize();
 
-        for (int i = 0; i < this.getBitWidth() - num.length(); ++i) {
-            sb.append("0");
+            wavFile.setBuffering(bufferSize, this.readAheadBuffers);
         }
 
-        sb.append(num);
+        return wavFile;
+    }
+
+    private long getEndFrame(final WavFile wavFile) {
+        if (this.endFrame < 0) {
+            return wavFile.getNumFrames();
+        }
 
-        return sb.toString();
+        return Math.min(this.endFrame, wavFile.getNumFrames());
     }
 
     private double getDecibelLevel(final double value) {
@@ -158,34 +527,625 @@ public class Converter {
     }
 
     public String getFormat() {
-        return this.format;
+        return this.output.getFormat();
     }
 
     public void setFormat(final String format) throws Exception {
-        if (format.equals("binary") || format.equals("hex")) {
-            this.format = format;
-        } else if (format.isEmpty()) {
-            this.format = "binary";
-        } else {
-            throw new Exception(String.format("Unexpected format %s.", format));
-        }
+        this.output.setFormat(format);
     }
 
     public int getBitWidth() {
-        return this.bitWidth;
+        return this.output.getBitWidth();
     }
 
     public void setBitWidth(final String bitWidth) throws NumberFormatException {
-        this.bitWidth = Integer.parseInt(bitWidth);
+        this.output.setBitWidth(bitWidth);
     }
 
     public File getMapFile() {
-        return this.mapFile;
+        return this.output.getMapFile();
     }
 
     public void setMapFile(final File mapFile) {
-        this.mapFile = mapFile;
+        this.output.setMapFile(mapFile);
+    }
+
+    public CompiledDecibelMap getDecibelMap() {
+        return this.output.getDecibelMap();
+    }
+
+    /**
+     * Use a map compiled already, for example one shared by several conversions.
+     */
+    public void setDecibelMap(final CompiledDecibelMap dbMap) {
+        this.output.setDecibelMap(dbMap);
+    }
+
+    /**
+     * Add an output written in the same pass as the first one, with its own format,
+     * bit width and decibel map.
+     */
+    public void addOutput(final OutputTarget target) {
+        this.additionalOutputs.add(target);
+    }
+
+    /**
+     * Every output, the one given to the constructor first.
+     */
+    public List<OutputTarget> getOutputs() {
+        final List<OutputTarget> outputs = new ArrayList<OutputTarget>();
+
+        outputs.add(this.output);
+        outputs.addAll(this.additionalOutputs);
+
+        return Collections.unmodifiableList(outputs);
+    }
+
+    public boolean isMemoryMapped() {
+        return this.memoryMapped;
+    }
+
+    public void setMemoryMapped(final boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public long getStartFrame() {
+        return this.startFrame;
+    }
+
+    public void setStartFrame(final long startFrame) throws Exception {
+        if (startFrame < 0) {
+            throw new Exception(String.format("Unexpected start frame %d.", startFrame));
+        }
+
+        this.startFrame = startFrame;
+    }
+
+    public long getEndFrame() {
+        return this.endFrame;
+    }
+
+    /**
+     * Set the frame to stop before. A negative frame converts up to the end of the file.
+     */
+    public void setEndFrame(final long endFrame) {
+        this.endFrame = endFrame;
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
 
-        this.parseDecibelMap();
+    /**
+     * Set the wav read buffer size in bytes. Zero keeps the default size.
+     */
+    public void setBufferSize(final int bufferSize) throws Exception {
+        if (bufferSize < 0) {
+            throw new Exception(String.format("Unexpected buffer size %d.", bufferSize));
+        }
+
+        this.bufferSize = bufferSize;
+    }
+
+    public int getReadAheadBuffers() {
+        return this.readAheadBuffers;
+    }
+
+    /**
+     * Set the number of buffers filled by a background thread. Zero reads synchronously.
+     */
+    public void setReadAheadBuffers(final int readAheadBuffers) throws Exception {
+        if (readAheadBuffers < 0) {
+            throw new Exception(
+                    String.format("Unexpected number of read-ahead buffers %d.", readAheadBuffers));
+        }
+
+        this.readAheadBuffers = readAheadBuffers;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Set the number of threads converting chunks of frames. One converts on the
+     * calling thread. Wav data read from a stream is always converted on one thread.
+     */
+    public void setThreads(final int threads) throws Exception {
+        if (threads < 1) {
+            throw new Exception(String.format("Unexpected number of threads %d.", threads));
+        }
+
+        this.threads = threads;
+    }
+
+    public boolean isPositionalOutput() {
+        return this.positionalOutput;
+    }
+
+    /**
+     * Let each thread write its lines straight to their offset in a pre-sized
+     * output file, instead of handing them to one writer in order. Only used for
+     * wav files converted to a single $readmem file, with maps whose lines all
+     * have the same length.
+     */
+    public void setPositionalOutput(final boolean positionalOutput) {
+        this.positionalOutput = positionalOutput;
+    }
+
+    public int getFlushSize() {
+        return this.flushSize;
+    }
+
+    /**
+     * Set the number of bytes buffered before the output is written out. Zero keeps
+     * the default size.
+     */
+    public void setFlushSize(final int flushSize) throws Exception {
+        if (flushSize < 0) {
+            throw new Exception(String.format("Unexpected flush size %d.", flushSize));
+        }
+
+        this.flushSize = flushSize;
+    }
+
+    public int getWriteBehindBuffers() {
+        return this.writeBehindBuffers;
+    }
+
+    /**
+     * Set the number of output buffers written out by a background thread. Zero
+     * writes synchronously.
+     */
+    public void setWriteBehindBuffers(final int writeBehindBuffers) throws Exception {
+        if (writeBehindBuffers < 0) {
+            throw new Exception(String.format(
+                    "Unexpected number of write-behind buffers %d.", writeBehindBuffers));
+        }
+
+        this.writeBehindBuffers = writeBehindBuffers;
+    }
+
+    public boolean isQuiet() {
+        return this.quiet;
+    }
+
+    /**
+     * Do not print the wav file information and results, for example when many files
+     * are converted at once.
+     */
+    public void setQuiet(final boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Verilog numbers written to each output by the last conversion.
+     */
+    public long getVerilogNumberCount() {
+        return this.verilogNumberCount;
+    }
+
+    /**
+     * Lowest decibel level read by the last conversion.
+     */
+    public double getMinDecibel() {
+        return this.getDecibelLevel(this.minValue);
+    }
+
+    /**
+     * Highest decibel level read by the last conversion.
+     */
+    public double getMaxDecibel() {
+        return this.getDecibelLevel(this.maxValue);
+    }
+
+    /**
+     * An output with its decibel map prepared for one conversion. Integer input is
+     * mapped through a sample table or sample thresholds, $readmem text through a
+     * table of lines. All of them are shared by the threads of the conversion.
+     */
+    private final class MappedOutput {
+        private final OutputTarget target;
+        private final CompiledDecibelMap dbMap;
+        private final int[] sampleTable;
+        private final SampleThresholds sampleThresholds;
+        private final EncodedNumberTable lineTable;
+
+        MappedOutput(final OutputTarget target, final WavHeader header) throws Exception {
+            final boolean sampleMapping = Converter.this.hasSampleMapping(header);
+
+            this.target = target;
+            this.dbMap = target.getDecibelMap();
+            this.sampleTable = sampleMapping && header.getBytesPerSample() <= 2
+                    ? Converter.this.createSampleTable(header, this.dbMap) : null;
+            this.sampleThresholds = sampleMapping && this.sampleTable == null
+                    ? Converter.this.createSampleThresholds(header, this.dbMap) : null;
+            this.lineTable = OutputFormats.isReadmemFormat(target.getFormat())
+                    ? ReadmemEncoder.createLineTable(target.getFormat(), target.getBitWidth(),
+                            this.dbMap.getVerilogNumbers())
+                    : null;
+        }
+
+        /**
+         * Whether every line has the same length, so lines can be written at
+         * offsets known up front.
+         */
+        boolean isPositional() {
+            return this.target.getOutputFile() != null && this.lineTable != null
+                    && this.lineTable.getTextLength() > 0;
+        }
+
+        OutputEncoder createEncoder(final OutputSink out) throws Exception {
+            if (this.lineTable != null) {
+                return new ReadmemEncoder(this.lineTable, out);
+            }
+
+            return OutputFormats.createEncoder(this.target.getFormat(),
+                    this.target.getBitWidth(), this.dbMap.getVerilogNumbers(), out);
+        }
+    }
+
+    /**
+     * Buffers and statistics of one thread converting blocks of frames. Integer
+     * input is read as raw samples, other input as normalised amplitudes. Each
+     * block is decoded once and mapped for every output.
+     */
+    private final class BlockConverter {
+        private final WavHeader header;
+        private final List<MappedOutput> outputs;
+        private final int[] samples;
+        private final double[] amplitudes;
+        private final double[] dbLevels;
+        private final int[][] verilogNumbers;
+        private final Statistics statistics;
+
+        BlockConverter(final WavHeader header, final List<MappedOutput> outputs) {
+            final int bufferLength = header.getNumChannels() * BUFFER_SIZE;
+            final boolean sampleMapping = Converter.this.hasSampleMapping(header);
+
+            this.header = header;
+            this.outputs = outputs;
+            this.samples = sampleMapping ? new int[bufferLength] : null;
+            this.amplitudes = sampleMapping ? null : new double[bufferLength];
+            this.dbLevels = sampleMapping ? null : new double[bufferLength];
+            this.verilogNumbers = new int[outputs.size()][bufferLength];
+            this.statistics = new Statistics();
+        }
+
+        int read(final WavFile wavFile, final int numFrames) throws Exception {
+            if (this.samples != null) {
+                return wavFile.readFrames(this.samples, numFrames);
+            }
+
+            return wavFile.readFrames(this.amplitudes, numFrames);
+        }
+
+        int read(final PositionalWavReader reader, final long frame, final int numFrames)
+                throws Exception {
+            if (this.samples != null) {
+                return reader.readFrames(frame, this.samples, 0, numFrames);
+            }
+
+            return reader.readFrames(frame, this.amplitudes, 0, numFrames);
+        }
+
+        void map(final int numSamples) throws Exception {
+            if (this.samples != null) {
+                this.collectSampleRange(numSamples);
+
+                for (int i = 0; i < this.verilogNumbers.length; ++i) {
+                    this.mapSamples(this.outputs.get(i), this.verilogNumbers[i], numSamples);
+                }
+            } else {
+                this.computeDecibelLevels(numSamples);
+
+                for (int i = 0; i < this.verilogNumbers.length; ++i) {
+                    this.mapDecibelLevels(this.outputs.get(i).dbMap, this.verilogNumbers[i],
+                            numSamples);
+                }
+            }
+
+            this.statistics.verilogNumberCount += numSamples;
+        }
+
+        /**
+         * Decibel levels of normalised amplitudes, for any sample format.
+         */
+        private void computeDecibelLevels(final int numSamples) {
+            double minValue = this.statistics.minValue;
+            double maxValue = this.statistics.maxValue;
+
+            for (int s = 0; s < numSamples; ++s) {
+                final double amplitude = this.amplitudes[s];
+                final double amplitudeNormalized = (amplitude + 1) / 2;
+
+                this.dbLevels[s] = Converter.this.getDecibelLevel(amplitudeNormalized);
+
+                minValue = Math.min(minValue, amplitudeNormalized);
+                maxValue = Math.max(amplitudeNormalized, maxValue);
+            }
+
+            this.statistics.minValue = minValue;
+            this.statistics.maxValue = maxValue;
+        }
+
+        private void mapDecibelLevels(final CompiledDecibelMap dbMap,
+                final int[] verilogNumbers, final int numSamples) throws Exception {
+            for (int s = 0; s < numSamples; ++s) {
+                verilogNumbers[s] = dbMap.getVerilogNumber(this.dbLevels[s]);
+            }
+        }
+
+        private void collectSampleRange(final int numSamples) {
+            int minSampleRead = this.statistics.minSample;
+            int maxSampleRead = this.statistics.maxSample;
+
+            for (int s = 0; s < numSamples; ++s) {
+                final int sample = this.samples[s];
+
+                minSampleRead = Math.min(minSampleRead, sample);
+                maxSampleRead = Math.max(sample, maxSampleRead);
+            }
+
+            this.statistics.minSample = minSampleRead;
+            this.statistics.maxSample = maxSampleRead;
+        }
+
+        /**
+         * Map raw integer samples without computing decibels per sample. Input of up
+         * to 2 bytes per sample goes through a table holding the Verilog number of
+         * every possible sample, wider input through a table of sample thresholds.
+         */
+        private void mapSamples(final MappedOutput output, final int[] verilogNumbers,
+                final int numSamples) throws Exception {
+            final int[] sampleTable = output.sampleTable;
+            final SampleThresholds sampleThresholds = output.sampleThresholds;
+            final int minSample = getMinSample(this.header);
+
+            for (int s = 0; s < numSamples; ++s) {
+                final int sample = this.samples[s];
+                int verilogNumber = sampleTable != null ? sampleTable[sample - minSample]
+                        : sampleThresholds.getVerilogNumber(sample);
+
+                // Throws the same error the sample would have hit without a table
+                if (verilogNumber == UNMAPPED_SAMPLE) {
+                    verilogNumber = output.dbMap.getVerilogNumber(
+                            Converter.this.getDecibelLevel(
+                                    getAmplitudeNormalized(this.header, sample)));
+                }
+
+                verilogNumbers[s] = verilogNumber;
+            }
+        }
+
+        void write(final OutputEncoder[] encoders, final int numSamples) throws Exception {
+            for (int i = 0; i < encoders.length; ++i) {
+                encoders[i].encode(this.verilogNumbers[i], 0, numSamples);
+            }
+        }
+    }
+
+    /**
+     * Conversion of the frames from startFrame up to endFrame, run on a ForkJoinPool.
+     * For each output the chunk holds either its $readmem text or its Verilog
+     * numbers. Errors are kept for the thread writing the outputs to raise.
+     */
+    private final class ChunkConversion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PositionalWavReader reader;
+        private final long startFrame;
+        private final long endFrame;
+        private final BlockConverter block;
+        private final MemoryOutputSink[] texts;
+        private final VerilogNumberList[] verilogNumbers;
+        private final OutputEncoder[] encoders;
+        private Exception error;
+
+        ChunkConversion(final PositionalWavReader reader, final List<MappedOutput> outputs,
+                final long startFrame, final long endFrame) {
+            this.reader = reader;
+            this.startFrame = startFrame;
+            this.endFrame = endFrame;
+            this.block = new BlockConverter(reader.getHeader(), outputs);
+            this.texts = new MemoryOutputSink[outputs.size()];
+            this.verilogNumbers = new VerilogNumberList[outputs.size()];
+            this.encoders = new OutputEncoder[outputs.size()];
+
+            for (int i = 0; i < this.encoders.length; ++i) {
+                final MappedOutput output = outputs.get(i);
+
+                if (output.lineTable != null) {
+                    this.texts[i] = new MemoryOutputSink();
+                    this.encoders[i] = new ReadmemEncoder(output.lineTable, this.texts[i]);
+                } else {
+                    this.verilogNumbers[i] = new VerilogNumberList(
+                            (int) (endFrame - startFrame) * reader.getHeader().getNumChannels());
+                    this.encoders[i] = this.verilogNumbers[i];
+                }
+            }
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Converter.this.convertFrames(this.reader, this.startFrame, this.endFrame,
+                        this.block, this.encoders);
+            } catch (final Exception e) {
+                this.error = e;
+            }
+        }
+    }
+
+    /**
+     * Conversion of the frames from startFrame up to endFrame straight into the
+     * output file. Ranges longer than a chunk are split in two and converted in
+     * parallel. The error kept is the one of the first failed chunk in frame order,
+     * chunks after a failed chunk are skipped.
+     */
+    private final class RangeConversion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PositionalWavReader reader;
+        private final MappedOutput output;
+        private final FileChannel channel;
+        private final long frameLength;
+        private final long startFrame;
+        private final long endFrame;
+        private final AtomicLong firstFailedFrame;
+        private Statistics statistics;
+        private Exception error;
+
+        RangeConversion(final PositionalWavReader reader, final MappedOutput output,
+                final FileChannel channel, final long frameLength, final long startFrame,
+                final long endFrame, final AtomicLong firstFailedFrame) {
+            this.reader = reader;
+            this.output = output;
+            this.channel = channel;
+            this.frameLength = frameLength;
+            this.startFrame = startFrame;
+            this.endFrame = endFrame;
+            this.firstFailedFrame = firstFailedFrame;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.endFrame - this.startFrame > CHUNK_FRAMES) {
+                final long middleFrame = this.startFrame + (this.endFrame - this.startFrame) / 2;
+                final RangeConversion first = new RangeConversion(this.reader, this.output,
+                        this.channel, this.frameLength, this.startFrame, middleFrame,
+                        this.firstFailedFrame);
+                final RangeConversion second = new RangeConversion(this.reader, this.output,
+                        this.channel, this.frameLength, middleFrame, this.endFrame,
+                        this.firstFailedFrame);
+
+                invokeAll(first, second);
+
+                this.statistics = first.statistics;
+                this.statistics.add(second.statistics);
+                this.error = first.error != null ? first.error : second.error;
+                return;
+            }
+
+            final BlockConverter block = new BlockConverter(this.reader.getHeader(),
+                    Collections.singletonList(this.output));
+
+            this.statistics = block.statistics;
+
+            if (this.startFrame > this.firstFailedFrame.get()) {
+                return;
+            }
+
+            try {
+                final MemoryOutputSink out = new MemoryOutputSink();
+                final OutputEncoder encoder = new ReadmemEncoder(this.output.lineTable, out);
+
+                Converter.this.convertFrames(this.reader, this.startFrame, this.endFrame,
+                        block, new OutputEncoder[] {encoder});
+
+                final ByteBuffer bytes = out.getBuffer();
+                long position = (this.startFrame - Converter.this.startFrame) * this.frameLength;
+
+                while (bytes.hasRemaining()) {
+                    position += this.channel.write(bytes, position);
+                }
+            } catch (final Exception e) {
+                this.error = e;
+
+                long failedFrame = this.firstFailedFrame.get();
+
+                while (this.startFrame < failedFrame
+                        && !this.firstFailedFrame.compareAndSet(failedFrame, this.startFrame)) {
+                    failedFrame = this.firstFailedFrame.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * Encoder keeping the Verilog numbers themselves, for chunks of formats that
+     * cannot be encoded a chunk at a time.
+     */
+    private static final class VerilogNumberList implements OutputEncoder {
+        private final int[] verilogNumbers;
+        private int count;
+
+        VerilogNumberList(final int capacity) {
+            this.verilogNumbers = new int[capacity];
+        }
+
+        @Override
+        public void begin(final long count) {
+        }
+
+        @Override
+        public void encode(final int[] verilogNumbers, final int offset, final int count) {
+            System.arraycopy(verilogNumbers, offset, this.verilogNumbers, this.count, count);
+            this.count += count;
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    /**
+     * Sample count and extremes of the converted frames. Raw sample extremes are
+     * kept for integer input, normalised amplitude extremes for other input.
+     */
+    private static final class Statistics {
+        private long verilogNumberCount;
+        private double minValue = 1;
+        private double maxValue = 0;
+        private int minSample = Integer.MAX_VALUE;
+        private int maxSample = Integer.MIN_VALUE;
+
+        void add(final Statistics other) {
+            this.verilogNumberCount += other.verilogNumberCount;
+            this.minValue = Math.min(this.minValue, other.minValue);
+            this.maxValue = Math.max(other.maxValue, this.maxValue);
+            this.minSample = Math.min(this.minSample, other.minSample);
+            this.maxSample = Math.max(other.maxSample, this.maxSample);
+        }
+    }
+
+    /**
+     * Verilog numbers of runs of consecutive raw samples.
+     */
+    private static class SampleThresholds {
+        private final int[] runStarts;
+        private final int[] runVerilogNumbers;
+
+        SampleThresholds(final List<Integer> runStarts, final List<Integer> runVerilogNumbers) {
+            this.runStarts = new int[runStarts.size()];
+            this.runVerilogNumbers = new int[runVerilogNumbers.size()];
+
+            for (int i = 0; i < this.runStarts.length; ++i) {
+                this.runStarts[i] = runStarts.get(i);
+                this.runVerilogNumbers[i] = runVerilogNumbers.get(i);
+            }
+        }
+
+        /**
+         * Binary search for the last run starting at or before the sample. The
+         * window shrinks by the same amount either way, which keeps the loop free of
+         * hard to predict branches.
+         */
+        int getVerilogNumber(final int sample) {
+            int first = 0;
+            int count = this.runStarts.length;
+
+            while (count > 1) {
+                final int half = count >>> 1;
+
+                if (this.runStarts[first + half] <= sample) {
+                    first += half;
+                }
+
+                count -= half;
+            }
+
+            return this.runVerilogNumbers[first];
+        }
     }
 }
@@ -1,7 +1,14 @@
 package converter;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.CompiledDecibelMap;
 import model.DecibelMap;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +26,37 @@ public class DecibelMapConverter {
             + "(?<integer>\\d+))$";
     private static final Pattern patternVerilogNumber = Pattern.compile(REGEX_VERILOG_NUMBER);
 
+    /**
+     * Read, convert and compile a Json map file. Errors are printed, and null is
+     * returned if the file cannot be read.
+     */
+    public static CompiledDecibelMap readCompiledDecibelMap(final File mapFile) {
+        final ObjectMapper mapper = new ObjectMapper();
+
+        try {
+            final DecibelMap originalDbMap = mapper.readValue(mapFile, DecibelMap.class);
+
+            return getCompiledDecibelMap(originalDbMap);
+        } catch (final JsonParseException e) {
+            System.err.println("Error: Failed to parse Json.");
+        } catch (final JsonMappingException e) {
+            System.err.println("Error: Failed to map Json.");
+        } catch (final IOException e) {
+            System.err.println("Error: Failed to open Json file.");
+        } catch (final IllegalArgumentException e) {
+            System.err.printf("Error: %s%n", e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Convert and compile the map for lookups by integer decibel level.
+     */
+    public static CompiledDecibelMap getCompiledDecibelMap(final DecibelMap map) {
+        return CompiledDecibelMap.compile(getConvertedDecibelMap(map));
+    }
+
     public static Map<String, Integer> getConvertedDecibelMap(final DecibelMap map) {
         final Map<String, Integer> convertedMap = new HashMap<String, Integer>();
         final Map<String, Object> db = map.getDb();
@@ -0,0 +1,100 @@
+package converter;
+
+import model.CompiledDecibelMap;
+import output.OutputFormats;
+import output.OutputSink;
+
+import java.io.File;
+
+/**
+ * One output of a conversion: where it goes, its format, bit width and decibel map.
+ */
+public class OutputTarget {
+    private final File outputFile;
+    private final OutputSink outputSink;
+    private String format;
+    private int bitWidth;
+    private File mapFile;
+    private CompiledDecibelMap dbMap;
+
+    public OutputTarget(final File outputFile) {
+        this(outputFile, null);
+    }
+
+    /**
+     * Output to a sink, such as standard output or memory. The sink is closed when
+     * the conversion ends.
+     */
+    public OutputTarget(final OutputSink outputSink) {
+        this(null, outputSink);
+    }
+
+    private OutputTarget(final File outputFile, final OutputSink outputSink) {
+        this.outputFile = outputFile;
+        this.outputSink = outputSink;
+
+        this.format = OutputFormats.BINARY;
+        this.dbMap = CompiledDecibelMap.EMPTY;
+    }
+
+    /**
+     * Output file, null if the output goes to a sink.
+     */
+    public File getOutputFile() {
+        return this.outputFile;
+    }
+
+    /**
+     * Output sink, null if the output goes to a file.
+     */
+    public OutputSink getOutputSink() {
+        return this.outputSink;
+    }
+
+    public String getFormat() {
+        return this.format;
+    }
+
+    public void setFormat(final String format) throws Exception {
+        if (OutputFormats.isSupported(format)) {
+            this.format = format;
+        } else if (format.isEmpty()) {
+            this.format = OutputFormats.BINARY;
+        } else {
+            throw new Exception(String.format("Unexpected format %s.", format));
+        }
+    }
+
+    public int getBitWidth() {
+        return this.bitWidth;
+    }
+
+    public void setBitWidth(final String bitWidth) throws NumberFormatException {
+        this.bitWidth = Integer.parseInt(bitWidth);
+    }
+
+    public File getMapFile() {
+        return this.mapFile;
+    }
+
+    public void setMapFile(final File mapFile) {
+        this.mapFile = mapFile;
+
+        final CompiledDecibelMap dbMap = DecibelMapConverter.readCompiledDecibelMap(mapFile);
+
+        if (dbMap != null) {
+            this.dbMap = dbMap;
+        }
+    }
+
+    public CompiledDecibelMap getDecibelMap() {
+        return this.dbMap;
+    }
+
+    /**
+     * Use a map compiled already, for example one shared by several outputs.
+     */
+    public void setDecibelMap(final CompiledDecibelMap dbMap) {
+        this.dbMap = dbMap;
+    }
+}
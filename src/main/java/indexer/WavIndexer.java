@@ -0,0 +1,159 @@
+package indexer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.WavManifestEntry;
+import sound.WavFile;
+import sound.WavHeader;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Index the wav files of a directory tree by reading only their headers.
+ *
+ * Headers are probed in parallel. The manifest lists the files in path order,
+ * files that cannot be parsed are listed with an error instead of failing the run.
+ */
+public class WavIndexer {
+    private final int threads;
+
+    public WavIndexer(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    String.format("Unexpected number of threads %d.", threads));
+        }
+
+        this.threads = threads;
+    }
+
+    public List<WavManifestEntry> index(final Path root) throws Exception {
+        final List<Path> wavPaths = findWavFiles(root);
+        final List<Future<WavManifestEntry>> futures =
+                new ArrayList<Future<WavManifestEntry>>(wavPaths.size());
+        final List<WavManifestEntry> entries = new ArrayList<WavManifestEntry>(wavPaths.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+        try {
+            for (final Path wavPath : wavPaths) {
+                futures.add(executor.submit(new Callable<WavManifestEntry>() {
+                    @Override
+                    public WavManifestEntry call() {
+                        return createEntry(root, wavPath);
+                    }
+                }));
+            }
+
+            for (final Future<WavManifestEntry> future : futures) {
+                entries.add(future.get());
+            }
+        } catch (final ExecutionException e) {
+            throw new Exception("Failed to index wav files.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return entries;
+    }
+
+    public static List<Path> findWavFiles(final Path root) throws IOException {
+        final List<Path> wavPaths = new ArrayList<Path>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()
+                        && file.getFileName().toString().toLowerCase().endsWith(".wav")) {
+                    wavPaths.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(wavPaths);
+
+        return wavPaths;
+    }
+
+    private static WavManifestEntry createEntry(final Path root, final Path wavPath) {
+        final WavManifestEntry entry = new WavManifestEntry();
+
+        entry.setPath(root.relativize(wavPath).toString());
+
+        try {
+            final WavHeader header = WavFile.probe(wavPath);
+
+            entry.setChannels(header.getNumChannels());
+            entry.setSampleRate(header.getSampleRate());
+            entry.setValidBits(header.getValidBits());
+            entry.setFloatingPoint(header.isFloatingPoint());
+            entry.setFrames(header.getNumFrames());
+            entry.setSamples(header.getNumFrames() * header.getNumChannels());
+
+            if (header.getSampleRate() > 0) {
+                entry.setSeconds((double) header.getNumFrames() / header.getSampleRate());
+            }
+        } catch (final Exception e) {
+            entry.setError(String.valueOf(e.getMessage()));
+        }
+
+        return entry;
+    }
+
+    public static void saveJson(final List<WavManifestEntry> entries, final File file)
+            throws IOException {
+        final ObjectMapper mapper = new ObjectMapper();
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, entries);
+    }
+
+    public static void saveCsv(final List<WavManifestEntry> entries, final File file)
+            throws IOException {
+        final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+
+        try {
+            writer.write("path,channels,sample_rate,valid_bits,floating_point,frames,samples,"
+                    + "seconds,error");
+            writer.newLine();
+
+            for (final WavManifestEntry entry : entries) {
+                writer.write(String.format("%s,%d,%d,%d,%b,%d,%d,%s,%s",
+                        getCsvField(entry.getPath()), entry.getChannels(),
+                        entry.getSampleRate(), entry.getValidBits(), entry.isFloatingPoint(),
+                        entry.getFrames(), entry.getSamples(),
+                        String.valueOf(entry.getSeconds()), getCsvField(entry.getError())));
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String getCsvField(final String text) {
+        if (text == null) {
+            return "";
+        }
+
+        if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+
+        return text;
+    }
+}
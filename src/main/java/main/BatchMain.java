@@ -0,0 +1,164 @@
+package main;
+
+import converter.BatchConverter;
+import converter.DecibelMapConverter;
+import model.BatchConversionEntry;
+import model.CompiledDecibelMap;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Example:
+ *
+ * wav_to_data_batch
+ * --format binary
+ * --bit_width 6
+ * --threads 8
+ * test/output
+ * test/db_map/UDA1330ATS.json
+ * test/sound
+ */
+public class BatchMain {
+    public static void main(final String[] args) {
+        final ArgumentParser parser = createParser();
+        final Namespace res = tryGetParsedArguments(args, parser);
+
+        if (res == null) {
+            System.exit(1);
+            return;
+        }
+
+        if (!tryConvert(res)) {
+            System.exit(1);
+            return;
+        }
+    }
+
+    private static ArgumentParser createParser() {
+        final ArgumentParser parser = ArgumentParsers.newArgumentParser("wav_to_data_batch")
+                .description("Convert many WAV files to Verilog data files at once.");
+
+        parser.addArgument("pathToOutputDirectory")
+                .help("Directory the output files are written to, in the same relative "
+                        + "paths as the wav files.");
+        parser.addArgument("pathToMap")
+                .help("Path to map file which contains decibel levels to Verilog numbers.");
+        parser.addArgument("pathToWav")
+                .nargs("+")
+                .help("Wav files, directories searched recursively for wav files, or glob "
+                        + "patterns such as \"sound/**.wav\".");
+        parser.addArgument("-f", "--format")
+                .setDefault("binary")
+                .choices("binary", "hex", "ihex", "mif", "coe", "raw")
+                .help("Output format: $readmemb \"binary\" or $readmemh \"hex\" text, Intel HEX, "
+                        + "Altera MIF, Xilinx COE or raw packed bits. Default: \"binary\".");
+        parser.addArgument("-w", "--bit_width")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Output bit width. Fit to bit width of max value if omitted.");
+        parser.addArgument("-t", "--threads")
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .type(Integer.class)
+                .help("Number of files converted at once. Default: number of processors.");
+        parser.addArgument("-m", "--memory_mapped")
+                .action(Arguments.storeTrue())
+                .help("Read the wav files through a memory mapping instead of a stream.");
+        parser.addArgument("--buffer_size")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Wav read buffer size in bytes. Default: 4096.");
+        parser.addArgument("--flush_size")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Output bytes buffered before they are written. Default: 1048576.");
+
+        return parser;
+    }
+
+    private static Namespace tryGetParsedArguments(final String[] args,
+            final ArgumentParser parser) {
+        Namespace res;
+
+        try {
+            res = parser.parseArgs(args);
+        } catch (final ArgumentParserException e) {
+            parser.handleError(e);
+            return null;
+        }
+
+        return res;
+    }
+
+    private static boolean tryConvert(final Namespace res) {
+        final String pathToOutputDirectory = res.getString("pathToOutputDirectory");
+        final String pathToMap = res.getString("pathToMap");
+        final List<String> pathsToWav = res.getList("pathToWav");
+        final String format = res.getString("format");
+        final int bitWidth = res.getInt("bit_width");
+        final int threads = res.getInt("threads");
+        final boolean memoryMapped = res.getBoolean("memory_mapped");
+        final int bufferSize = res.getInt("buffer_size");
+        final int flushSize = res.getInt("flush_size");
+
+        // Parsed once, shared by the conversions of every file
+        final CompiledDecibelMap dbMap =
+                DecibelMapConverter.readCompiledDecibelMap(new File(pathToMap));
+
+        if (dbMap == null) {
+            return false;
+        }
+
+        final List<BatchConversionEntry> entries;
+
+        try {
+            final BatchConverter converter = new BatchConverter(threads);
+
+            converter.setDecibelMap(dbMap);
+            converter.setFormat(format);
+            converter.setBitWidth(bitWidth);
+            converter.setMemoryMapped(memoryMapped);
+            converter.setBufferSize(bufferSize);
+            converter.setFlushSize(flushSize);
+
+            entries = converter.convert(pathsToWav, Paths.get(pathToOutputDirectory));
+        } catch (final Exception e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+
+        return printSummary(entries);
+    }
+
+    /**
+     * Print one line per file, then the totals. Returns whether every file was
+     * converted.
+     */
+    private static boolean printSummary(final List<BatchConversionEntry> entries) {
+        int failedCount = 0;
+        long verilogNumberCount = 0;
+
+        for (final BatchConversionEntry entry : entries) {
+            if (entry.getError() != null) {
+                System.out.printf("FAILED %s: %s%n", entry.getPath(), entry.getError());
+                ++failedCount;
+            } else {
+                System.out.printf("OK %s -> %s: %d Verilog numbers, %f to %f dB, %.3f s%n",
+                        entry.getPath(), entry.getOutputPath(), entry.getVerilogNumberCount(),
+                        entry.getMinDecibel(), entry.getMaxDecibel(), entry.getSeconds());
+                verilogNumberCount += entry.getVerilogNumberCount();
+            }
+        }
+
+        System.out.printf("Converted %d of %d wav files, %d Verilog numbers.%n",
+                entries.size() - failedCount, entries.size(), verilogNumberCount);
+
+        return failedCount == 0;
+    }
+}
@@ -0,0 +1,98 @@
+package main;
+
+import indexer.WavIndexer;
+import model.WavManifestEntry;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Example:
+ *
+ * wav_index
+ * --format csv
+ * --threads 8
+ * test/sound
+ * test/output/manifest.csv
+ */
+public class IndexMain {
+    public static void main(final String[] args) {
+        final ArgumentParser parser = createParser();
+        final Namespace res = tryGetParsedArguments(args, parser);
+
+        if (res == null) {
+            System.exit(1);
+            return;
+        }
+
+        if (!tryIndex(res)) {
+            System.exit(1);
+            return;
+        }
+    }
+
+    private static ArgumentParser createParser() {
+        final ArgumentParser parser = ArgumentParsers.newArgumentParser("wav_index")
+                .description("Write a manifest of the headers of all WAV files in a directory.");
+
+        parser.addArgument("pathToDirectory")
+                .help("Directory searched recursively for wav files.");
+        parser.addArgument("pathToManifest")
+                .help("Path to manifest file.");
+        parser.addArgument("-f", "--format")
+                .setDefault("json")
+                .choices("json", "csv")
+                .help("Manifest format. Default: \"json\".");
+        parser.addArgument("-t", "--threads")
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .type(Integer.class)
+                .help("Number of files probed at once. Default: number of processors.");
+
+        return parser;
+    }
+
+    private static Namespace tryGetParsedArguments(final String[] args,
+            final ArgumentParser parser) {
+        Namespace res;
+
+        try {
+            res = parser.parseArgs(args);
+        } catch (final ArgumentParserException e) {
+            parser.handleError(e);
+            return null;
+        }
+
+        return res;
+    }
+
+    private static boolean tryIndex(final Namespace res) {
+        final String pathToDirectory = res.getString("pathToDirectory");
+        final String pathToManifest = res.getString("pathToManifest");
+        final String format = res.getString("format");
+        final int threads = res.getInt("threads");
+
+        try {
+            final WavIndexer indexer = new WavIndexer(threads);
+            final List<WavManifestEntry> entries = indexer.index(Paths.get(pathToDirectory));
+            final File manifestFile = new File(pathToManifest);
+
+            if (format.equals("csv")) {
+                WavIndexer.saveCsv(entries, manifestFile);
+            } else {
+                WavIndexer.saveJson(entries, manifestFile);
+            }
+
+            System.out.printf("Indexed %d wav files.%n", entries.size());
+        } catch (final Exception e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+}
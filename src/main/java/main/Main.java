@@ -1,12 +1,17 @@
 package main;
 
 import converter.Converter;
+import converter.OutputTarget;
+import output.ChannelOutputSink;
+import output.OutputSink;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Example:
@@ -17,6 +22,10 @@ import java.io.File;
  * --map test/db_map/UDA1330ATS.json
  * test/sound/c4_click.wav
  * test/output/c4_click.bin
+ *
+ * More outputs can be written from the same pass over the wav file:
+ *
+ * --also test/output/c4_click.mif mif 8 test/db_map/UDA1330ATS.json
  */
 public class Main {
     public static void main(final String[] args) {
@@ -28,6 +37,11 @@ public class Main {
             return;
         }
 
+        // Keep messages out of the data written to standard output
+        if (res.getString("pathToOutput").equals("-")) {
+            System.setOut(System.err);
+        }
+
         printParsedArguments(res);
 
         if (!tryConvert(res)) {
@@ -41,19 +55,64 @@ public class Main {
                 .description("Convert WAV file to Verilog data file.");
 
         parser.addArgument("pathToOutput")
-                .help("Path to output file.");
+                .help("Path to output file. \"-\" writes the data to standard output.");
         parser.addArgument("pathToWav")
-                .help("Path to wav file.");
+                .help("Path to wav file. \"-\" reads the wav data from standard input.");
         parser.addArgument("pathToMap")
                 .help("Path to map file which contains decibel levels to Verilog numbers.");
         parser.addArgument("-f", "--format")
                 .setDefault("binary")
-                .choices("binary", "hex")
-                .help("Output format. Default: \"binary\".");
+                .choices("binary", "hex", "ihex", "mif", "coe", "raw")
+                .help("Output format: $readmemb \"binary\" or $readmemh \"hex\" text, Intel HEX, "
+                        + "Altera MIF, Xilinx COE or raw packed bits. Default: \"binary\".");
         parser.addArgument("-w", "--bit_width")
                 .setDefault(0)
                 .type(Integer.class)
                 .help("Output bit width. Fit to bit width of max value if omitted.");
+        parser.addArgument("-m", "--memory_mapped")
+                .action(Arguments.storeTrue())
+                .help("Read the wav file through a memory mapping instead of a stream.");
+        parser.addArgument("-s", "--start_frame")
+                .setDefault(0L)
+                .type(Long.class)
+                .help("First frame to convert. Default: 0.");
+        parser.addArgument("-e", "--end_frame")
+                .setDefault(-1L)
+                .type(Long.class)
+                .help("Frame to stop before. Convert up to the end of the file if omitted.");
+        parser.addArgument("--buffer_size")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Wav read buffer size in bytes. Default: 4096.");
+        parser.addArgument("--read_ahead")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Number of buffers filled by a background thread while converting. "
+                        + "Default: 0, read synchronously.");
+        parser.addArgument("-t", "--threads")
+                .setDefault(1)
+                .type(Integer.class)
+                .help("Number of threads converting chunks of frames in parallel. "
+                        + "Default: 1.");
+        parser.addArgument("-p", "--positional_output")
+                .action(Arguments.storeTrue())
+                .help("Let each thread write its lines straight into a pre-sized output "
+                        + "file. Needs numbers that all fit the bit width.");
+        parser.addArgument("--flush_size")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Output bytes buffered before they are written. Default: 1048576.");
+        parser.addArgument("--write_behind")
+                .setDefault(0)
+                .type(Integer.class)
+                .help("Number of output buffers written by a background thread while "
+                        + "converting. Default: 0, write synchronously.");
+        parser.addArgument("--also")
+                .nargs(4)
+                .metavar("PATH", "FORMAT", "BIT_WIDTH", "MAP")
+                .action(Arguments.append())
+                .help("Write another output from the same pass over the wav file, with its "
+                        + "own format, bit width (0 to fit) and map. Can be repeated.");
 
         return parser;
     }
@@ -78,12 +137,38 @@ public class Main {
         final String pathToMap = res.getString("pathToMap");
         final String format = res.getString("format");
         final String bitWidth = res.getString("bit_width");
+        final boolean memoryMapped = res.getBoolean("memory_mapped");
+        final long startFrame = res.getLong("start_frame");
+        final long endFrame = res.getLong("end_frame");
+        final int bufferSize = res.getInt("buffer_size");
+        final int readAheadBuffers = res.getInt("read_ahead");
+        final int threads = res.getInt("threads");
+        final boolean positionalOutput = res.getBoolean("positional_output");
+        final int flushSize = res.getInt("flush_size");
+        final int writeBehindBuffers = res.getInt("write_behind");
+        final List<List<String>> additionalOutputs = res.getList("also");
 
         System.out.printf("pathToOutput: %s%n", pathToOutput);
         System.out.printf("pathToWav: %s%n", pathToWav);
         System.out.printf("pathToMap: %s%n", pathToMap);
         System.out.printf("--format: %s%n", format);
         System.out.printf("--bit_width: %s%n", bitWidth);
+        System.out.printf("--memory_mapped: %b%n", memoryMapped);
+        System.out.printf("--start_frame: %d%n", startFrame);
+        System.out.printf("--end_frame: %d%n", endFrame);
+        System.out.printf("--buffer_size: %d%n", bufferSize);
+        System.out.printf("--read_ahead: %d%n", readAheadBuffers);
+        System.out.printf("--threads: %d%n", threads);
+        System.out.printf("--positional_output: %b%n", positionalOutput);
+        System.out.printf("--flush_size: %d%n", flushSize);
+        System.out.printf("--write_behind: %d%n", writeBehindBuffers);
+
+        if (additionalOutputs != null) {
+            for (final List<String> output : additionalOutputs) {
+                System.out.printf("--also: %s %s %s %s%n",
+                        output.get(0), output.get(1), output.get(2), output.get(3));
+            }
+        }
     }
 
     private static boolean tryConvert(final Namespace res) {
@@ -105,14 +190,74 @@ public class Main {
         final String pathToMap = res.getString("pathToMap");
         final String format = res.getString("format");
         final String bitWidth = res.getString("bit_width");
+        final boolean memoryMapped = res.getBoolean("memory_mapped");
+        final long startFrame = res.getLong("start_frame");
+        final long endFrame = res.getLong("end_frame");
+        final int bufferSize = res.getInt("buffer_size");
+        final int readAheadBuffers = res.getInt("read_ahead");
+        final int threads = res.getInt("threads");
+        final boolean positionalOutput = res.getBoolean("positional_output");
+        final int flushSize = res.getInt("flush_size");
+        final int writeBehindBuffers = res.getInt("write_behind");
+        final List<List<String>> additionalOutputs = res.getList("also");
 
-        final Converter waveConverter =
-                new Converter(new File(pathToWav), new File(pathToOutput));
+        final Converter waveConverter;
+
+        if (pathToOutput.equals("-")) {
+            final OutputSink outputSink = ChannelOutputSink.openStandardOutput(
+                    flushSize > 0 ? flushSize : ChannelOutputSink.DEFAULT_FLUSH_SIZE);
+
+            if (pathToWav.equals("-")) {
+                waveConverter = new Converter(System.in, outputSink);
+            } else {
+                waveConverter = new Converter(new File(pathToWav), outputSink);
+            }
+        } else if (pathToWav.equals("-")) {
+            waveConverter = new Converter(System.in, new File(pathToOutput));
+        } else {
+            waveConverter = new Converter(new File(pathToWav), new File(pathToOutput));
+        }
 
         waveConverter.setMapFile(new File(pathToMap));
         waveConverter.setFormat(format);
         waveConverter.setBitWidth(bitWidth);
+        waveConverter.setMemoryMapped(memoryMapped);
+        waveConverter.setStartFrame(startFrame);
+        waveConverter.setEndFrame(endFrame);
+        waveConverter.setBufferSize(bufferSize);
+        waveConverter.setReadAheadBuffers(readAheadBuffers);
+        waveConverter.setThreads(threads);
+        waveConverter.setPositionalOutput(positionalOutput);
+        waveConverter.setFlushSize(flushSize);
+        waveConverter.setWriteBehindBuffers(writeBehindBuffers);
+
+        if (additionalOutputs != null) {
+            for (final List<String> output : additionalOutputs) {
+                waveConverter.addOutput(createOutputTarget(output, waveConverter));
+            }
+        }
 
         return waveConverter;
     }
+
+    /**
+     * Output given as PATH FORMAT BIT_WIDTH MAP. The map of the first output is
+     * reused when the paths are the same.
+     */
+    private static OutputTarget createOutputTarget(final List<String> output,
+            final Converter waveConverter) throws Exception {
+        final OutputTarget target = new OutputTarget(new File(output.get(0)));
+        final File mapFile = new File(output.get(3));
+
+        target.setFormat(output.get(1));
+        target.setBitWidth(output.get(2));
+
+        if (mapFile.equals(waveConverter.getMapFile())) {
+            target.setDecibelMap(waveConverter.getDecibelMap());
+        } else {
+            target.setMapFile(mapFile);
+        }
+
+        return target;
+    }
 }
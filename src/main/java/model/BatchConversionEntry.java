@@ -0,0 +1,67 @@
+package model;
+
+public class BatchConversionEntry {
+    private String path;
+    private String outputPath;
+    private long verilogNumberCount;
+    private double minDecibel;
+    private double maxDecibel;
+    private double seconds;
+    private String error;
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    public String getOutputPath() {
+        return this.outputPath;
+    }
+
+    public void setOutputPath(final String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    public long getVerilogNumberCount() {
+        return this.verilogNumberCount;
+    }
+
+    public void setVerilogNumberCount(final long verilogNumberCount) {
+        this.verilogNumberCount = verilogNumberCount;
+    }
+
+    public double getMinDecibel() {
+        return this.minDecibel;
+    }
+
+    public void setMinDecibel(final double minDecibel) {
+        this.minDecibel = minDecibel;
+    }
+
+    public double getMaxDecibel() {
+        return this.maxDecibel;
+    }
+
+    public void setMaxDecibel(final double maxDecibel) {
+        this.maxDecibel = maxDecibel;
+    }
+
+    public double getSeconds() {
+        return this.seconds;
+    }
+
+    public void setSeconds(final double seconds) {
+        this.seconds = seconds;
+    }
+
+    public String getError() {
+        return this.error;
+    }
+
+    public void setError(final String error) {
+        this.error = error;
+    }
+}
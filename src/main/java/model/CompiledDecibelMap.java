@@ -0,0 +1,151 @@
+package model;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Decibel map compiled for lookups by integer decibel level.
+ *
+ * Levels are held in a dense array indexed by their offset from the lowest mapped
+ * level, with dedicated slots for "-Infinity" and the "Others" fallback. Instances
+ * are immutable and can be shared by any number of threads and conversions.
+ */
+public final class CompiledDecibelMap {
+    public static final String NEGATIVE_INFINITY_LEVEL = "-Infinity";
+    public static final String OTHERS_LEVEL = "Others";
+    public static final CompiledDecibelMap EMPTY =
+            new CompiledDecibelMap(0, new int[0], new boolean[0], false, 0, false, 0);
+
+    private static final int MAX_LEVEL_COUNT = 1 << 16;
+
+    private final int minLevel;
+    private final int[] verilogNumbers;
+    private final boolean[] mapped;
+    private final boolean hasNegativeInfinity;
+    private final int negativeInfinityVerilogNumber;
+    private final boolean hasOthers;
+    private final int othersVerilogNumber;
+
+    private CompiledDecibelMap(final int minLevel, final int[] verilogNumbers,
+            final boolean[] mapped, final boolean hasNegativeInfinity,
+            final int negativeInfinityVerilogNumber, final boolean hasOthers,
+            final int othersVerilogNumber) {
+        this.minLevel = minLevel;
+        this.verilogNumbers = verilogNumbers;
+        this.mapped = mapped;
+        this.hasNegativeInfinity = hasNegativeInfinity;
+        this.negativeInfinityVerilogNumber = negativeInfinityVerilogNumber;
+        this.hasOthers = hasOthers;
+        this.othersVerilogNumber = othersVerilogNumber;
+    }
+
+    /**
+     * Compile a map keyed by "-Infinity", "Others" or an integer decibel level.
+     */
+    public static CompiledDecibelMap compile(final Map<String, Integer> dbMap) {
+        int minLevel = Integer.MAX_VALUE;
+        int maxLevel = Integer.MIN_VALUE;
+
+        for (final String level : dbMap.keySet()) {
+            if (!level.equals(NEGATIVE_INFINITY_LEVEL) && !level.equals(OTHERS_LEVEL)) {
+                final int dbLevel = Integer.parseInt(level);
+
+                minLevel = Math.min(minLevel, dbLevel);
+                maxLevel = Math.max(dbLevel, maxLevel);
+            }
+        }
+
+        final long levelCount = minLevel > maxLevel ? 0 : (long) maxLevel - minLevel + 1;
+
+        if (levelCount > MAX_LEVEL_COUNT) {
+            throw new IllegalArgumentException(String.format(
+                    "Decibel map spans too many levels, from %d to %d.", minLevel, maxLevel));
+        }
+
+        final int[] verilogNumbers = new int[(int) levelCount];
+        final boolean[] mapped = new boolean[(int) levelCount];
+
+        for (final Map.Entry<String, Integer> entry : dbMap.entrySet()) {
+            final String level = entry.getKey();
+
+            if (!level.equals(NEGATIVE_INFINITY_LEVEL) && !level.equals(OTHERS_LEVEL)) {
+                final int index = Integer.parseInt(level) - minLevel;
+
+                verilogNumbers[index] = entry.getValue();
+                mapped[index] = true;
+            }
+        }
+
+        final Integer negativeInfinity = dbMap.get(NEGATIVE_INFINITY_LEVEL);
+        final Integer others = dbMap.get(OTHERS_LEVEL);
+
+        return new CompiledDecibelMap(levelCount == 0 ? 0 : minLevel, verilogNumbers, mapped,
+                negativeInfinity != null, negativeInfinity != null ? negativeInfinity : 0,
+                others != null, others != null ? others : 0);
+    }
+
+    /**
+     * Verilog number of a decibel level, rounded to the nearest integer level. Any
+     * infinite level maps to "-Infinity", and levels without a mapping to "Others".
+     */
+    public int getVerilogNumber(final double dbLevel) throws Exception {
+        if (Double.isInfinite(dbLevel)) {
+            if (this.hasNegativeInfinity) {
+                return this.negativeInfinityVerilogNumber;
+            }
+
+            return this.getOthersVerilogNumber(NEGATIVE_INFINITY_LEVEL);
+        }
+
+        return this.getVerilogNumber((int) Math.round(dbLevel));
+    }
+
+    public int getVerilogNumber(final int dbLevel) throws Exception {
+        final long index = (long) dbLevel - this.minLevel;
+
+        if (index >= 0 && index < this.mapped.length && this.mapped[(int) index]) {
+            return this.verilogNumbers[(int) index];
+        }
+
+        return this.getOthersVerilogNumber(String.valueOf(dbLevel));
+    }
+
+    /**
+     * Every Verilog number the map can return, in ascending order.
+     */
+    public int[] getVerilogNumbers() {
+        final Set<Integer> values = new TreeSet<Integer>();
+
+        for (int i = 0; i < this.mapped.length; ++i) {
+            if (this.mapped[i]) {
+                values.add(this.verilogNumbers[i]);
+            }
+        }
+
+        if (this.hasNegativeInfinity) {
+            values.add(this.negativeInfinityVerilogNumber);
+        }
+
+        if (this.hasOthers) {
+            values.add(this.othersVerilogNumber);
+        }
+
+        final int[] result = new int[values.size()];
+        int i = 0;
+
+        for (final int value : values) {
+            result[i++] = value;
+        }
+
+        return result;
+    }
+
+    private int getOthersVerilogNumber(final String dbLevelText) throws Exception {
+        if (this.hasOthers) {
+            return this.othersVerilogNumber;
+        }
+
+        throw new Exception(String.format("No map for decibel level %s", dbLevelText));
+    }
+}
@@ -0,0 +1,91 @@
+package model;
+
+public class WavManifestEntry {
+    private String path;
+    private int channels;
+    private long sampleRate;
+    private int validBits;
+    private boolean floatingPoint;
+    private long frames;
+    private long samples;
+    private double seconds;
+    private String error;
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    public int getChannels() {
+        return this.channels;
+    }
+
+    public void setChannels(final int channels) {
+        this.channels = channels;
+    }
+
+    public long getSampleRate() {
+        return this.sampleRate;
+    }
+
+    public void setSampleRate(final long sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getValidBits() {
+        return this.validBits;
+    }
+
+    public void setValidBits(final int validBits) {
+        this.validBits = validBits;
+    }
+
+    public boolean isFloatingPoint() {
+        return this.floatingPoint;
+    }
+
+    public void setFloatingPoint(final boolean floatingPoint) {
+        this.floatingPoint = floatingPoint;
+    }
+
+    public long getFrames() {
+        return this.frames;
+    }
+
+    public void setFrames(final long frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * Frames times channels, the number of values a conversion outputs.
+     */
+    public long getSamples() {
+        return this.samples;
+    }
+
+    public void setSamples(final long samples) {
+        this.samples = samples;
+    }
+
+    public double getSeconds() {
+        return this.seconds;
+    }
+
+    public void setSeconds(final double seconds) {
+        this.seconds = seconds;
+    }
+
+    /**
+     * Reason the header could not be read, null on success.
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    public void setError(final String error) {
+        this.error = error;
+    }
+}
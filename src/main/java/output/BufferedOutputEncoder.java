@@ -0,0 +1,72 @@
+package output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base of encoders that assemble their output in a reusable buffer and hand it to
+ * the sink whenever it fills up.
+ */
+public abstract class BufferedOutputEncoder implements OutputEncoder {
+    protected static final byte[] LINE_SEPARATOR =
+            System.getProperty("line.separator").getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] HEX_DIGITS =
+            "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    protected final ByteBuffer buffer;
+    private final OutputSink out;
+
+    protected BufferedOutputEncoder(final OutputSink out, final int maxPutLength) {
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, maxPutLength));
+    }
+
+    @Override
+    public void begin(final long count) throws Exception {
+    }
+
+    @Override
+    public void end() throws Exception {
+        this.flush();
+    }
+
+    /**
+     * Make room for length bytes, flushing the buffer if needed. Length must not be
+     * larger than the maxPutLength the encoder was created with.
+     */
+    protected final void reserve(final int length) throws IOException {
+        if (this.buffer.remaining() < length) {
+            this.flush();
+        }
+    }
+
+    protected final void put(final byte[] bytes) throws IOException {
+        this.reserve(bytes.length);
+        this.buffer.put(bytes);
+    }
+
+    protected final void put(final String text) throws IOException {
+        this.put(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Put upper case hex digits of value, padded with zeros to at least digits
+     * digits. The caller reserves the room.
+     */
+    protected final void putHex(final long value, final int digits) {
+        final int valueDigits = (64 - Long.numberOfLeadingZeros(value) + 3) / 4;
+
+        for (int i = Math.max(digits, valueDigits) - 1; i >= 0; --i) {
+            this.buffer.put(HEX_DIGITS[(int) (value >>> 4 * i) & 0xF]);
+        }
+    }
+
+    protected final void flush() throws IOException {
+        this.buffer.flip();
+        this.out.write(this.buffer);
+        this.buffer.clear();
+    }
+}
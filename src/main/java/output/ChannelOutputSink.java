@@ -0,0 +1,100 @@
+package output;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sink writing to a channel through a direct buffer of flushSize bytes.
+ *
+ * Writes larger than the buffer skip it once it is empty, so large blocks reach
+ * the channel without being copied.
+ */
+public class ChannelOutputSink implements OutputSink {
+    public static final int DEFAULT_FLUSH_SIZE = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final ByteBuffer buffer;
+
+    public ChannelOutputSink(final WritableByteChannel channel, final int flushSize,
+            final boolean closeChannel) {
+        if (flushSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format("Unexpected flush size %d.", flushSize));
+        }
+
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.buffer = ByteBuffer.allocateDirect(flushSize);
+    }
+
+    /**
+     * Create or truncate a file and write to it.
+     */
+    public static ChannelOutputSink openFile(final File file, final int flushSize)
+            throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        return new ChannelOutputSink(channel, flushSize, true);
+    }
+
+    /**
+     * Write to standard output. Closing the sink flushes it but leaves standard
+     * output open.
+     */
+    public static ChannelOutputSink openStandardOutput(final int flushSize) {
+        final FileChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+
+        return new ChannelOutputSink(channel, flushSize, false);
+    }
+
+    @Override
+    public void write(final ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (this.buffer.position() == 0 && src.remaining() >= this.buffer.capacity()) {
+                this.channel.write(src);
+                continue;
+            }
+
+            final int count = Math.min(src.remaining(), this.buffer.remaining());
+            final ByteBuffer part = src.duplicate();
+
+            part.limit(part.position() + count);
+            this.buffer.put(part);
+            src.position(src.position() + count);
+
+            if (!this.buffer.hasRemaining()) {
+                this.flush();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.buffer.flip();
+
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+
+        this.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            if (this.closeChannel) {
+                this.channel.close();
+            }
+        }
+    }
+}
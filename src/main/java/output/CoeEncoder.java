@@ -0,0 +1,56 @@
+package output;
+
+/**
+ * Xilinx coefficient file, one hex number per line, separated by commas and
+ * closed by a semicolon.
+ */
+public class CoeEncoder extends BufferedOutputEncoder {
+    private final EncodedNumberTable data;
+    private boolean first;
+
+    public CoeEncoder(final int dataWidth, final int[] verilogNumbers, final OutputSink out)
+            throws Exception {
+        this(new EncodedNumberTable("HEX", (dataWidth + 3) / 4, verilogNumbers, new byte[0]),
+                out);
+    }
+
+    private CoeEncoder(final EncodedNumberTable data, final OutputSink out) {
+        super(out, 1 + LINE_SEPARATOR.length + data.getMaxTextLength());
+
+        this.data = data;
+        this.first = true;
+    }
+
+    @Override
+    public void begin(final long count) throws Exception {
+        final String separator = System.getProperty("line.separator");
+
+        this.put("memory_initialization_radix=16;" + separator
+                + "memory_initialization_vector=" + separator);
+    }
+
+    @Override
+    public void encode(final int[] verilogNumbers, final int offset, final int count)
+            throws Exception {
+        for (int i = offset; i < offset + count; ++i) {
+            final byte[] text = this.data.getText(verilogNumbers[i]);
+
+            this.reserve(1 + LINE_SEPARATOR.length + text.length);
+
+            // The last number is followed by the semicolon instead of a comma
+            if (!this.first) {
+                this.buffer.put((byte) ',').put(LINE_SEPARATOR);
+            }
+
+            this.buffer.put(text);
+            this.first = false;
+        }
+    }
+
+    @Override
+    public void end() throws Exception {
+        this.put(";" + System.getProperty("line.separator"));
+
+        super.end();
+    }
+}
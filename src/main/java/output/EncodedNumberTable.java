@@ -0,0 +1,174 @@
+package output;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ASCII text of Verilog numbers, padded with zeros to a number of digits and
+ * followed by a fixed suffix such as a line separator.
+ *
+ * The text of every number a decibel map can return is encoded once, so encoding
+ * a sample is a copy of a few bytes. The texts are held in a dense table indexed
+ * from the smallest number when the numbers span few values, in a sorted table
+ * otherwise. Tables are immutable and can be shared by any number of threads.
+ */
+public final class EncodedNumberTable {
+    private static final int MAX_DENSE_SPAN = 1 << 16;
+
+    private final String radix;
+    private final int digits;
+    private final byte[] suffix;
+    private final int[] verilogNumbers;
+    private final byte[][] texts;
+    private final int minVerilogNumber;
+    private final byte[][] denseTexts;
+
+    /**
+     * @param radix "binary", "hex", or "HEX" for upper case hex digits.
+     * @param digits Digits to pad to. Wider numbers are not cut.
+     * @param verilogNumbers Numbers to encode up front, in ascending order.
+     */
+    public EncodedNumberTable(final String radix, final int digits, final int[] verilogNumbers,
+            final byte[] suffix) throws Exception {
+        this.radix = radix;
+        this.digits = digits;
+        this.suffix = suffix.clone();
+        this.verilogNumbers = verilogNumbers.clone();
+        this.texts = new byte[verilogNumbers.length][];
+
+        for (int i = 0; i < verilogNumbers.length; ++i) {
+            this.texts[i] = this.encodeText(verilogNumbers[i]);
+        }
+
+        final int count = verilogNumbers.length;
+        final long span =
+                count == 0 ? 0 : (long) verilogNumbers[count - 1] - verilogNumbers[0] + 1;
+
+        if (count > 0 && span <= MAX_DENSE_SPAN) {
+            this.minVerilogNumber = verilogNumbers[0];
+            this.denseTexts = new byte[(int) span][];
+
+            for (int i = 0; i < count; ++i) {
+                this.denseTexts[verilogNumbers[i] - this.minVerilogNumber] = this.texts[i];
+            }
+        } else {
+            this.minVerilogNumber = 0;
+            this.denseTexts = null;
+        }
+    }
+
+    /**
+     * Encoded text of a number, including the suffix.
+     */
+    public byte[] getText(final int verilogNumber) throws Exception {
+        if (this.denseTexts != null) {
+            final long index = (long) verilogNumber - this.minVerilogNumber;
+
+            if (index >= 0 && index < this.denseTexts.length) {
+                final byte[] text = this.denseTexts[(int) index];
+
+                if (text != null) {
+                    return text;
+                }
+            }
+        } else {
+            final int index = Arrays.binarySearch(this.verilogNumbers, verilogNumber);
+
+            if (index >= 0) {
+                return this.texts[index];
+            }
+        }
+
+        // Not a number of the table, encode it on the spot
+        return this.encodeText(verilogNumber);
+    }
+
+    /**
+     * Copy the texts of numbers from verilogNumbers[offset] on into dst, as many as
+     * fit. Returns the number of texts copied.
+     */
+    public int encode(final int[] verilogNumbers, final int offset, final int count,
+            final ByteBuffer dst) throws Exception {
+        int i = 0;
+
+        while (i < count) {
+            final byte[] text = this.getText(verilogNumbers[offset + i]);
+
+            if (dst.remaining() < text.length) {
+                break;
+            }
+
+            dst.put(text);
+            ++i;
+        }
+
+        return i;
+    }
+
+    /**
+     * Length in bytes of the text of every number of the table, or -1 if the
+     * lengths differ.
+     */
+    public long getTextLength() {
+        long textLength = -1;
+
+        for (final byte[] text : this.texts) {
+            if (textLength >= 0 && text.length != textLength) {
+                return -1;
+            }
+
+            textLength = text.length;
+        }
+
+        return textLength;
+    }
+
+    /**
+     * Length in bytes of the longest text of the table.
+     */
+    public int getMaxTextLength() {
+        int maxTextLength = 0;
+
+        for (final byte[] text : this.texts) {
+            maxTextLength = Math.max(text.length, maxTextLength);
+        }
+
+        return maxTextLength;
+    }
+
+    private byte[] encodeText(final int verilogNumber) throws Exception {
+        final String number = this.getIntegerToVerilogNumber(verilogNumber);
+        final byte[] text = new byte[number.length() + this.suffix.length];
+
+        System.arraycopy(number.getBytes(StandardCharsets.US_ASCII), 0, text, 0,
+                number.length());
+        System.arraycopy(this.suffix, 0, text, number.length(), this.suffix.length);
+
+        return text;
+    }
+
+    private String getIntegerToVerilogNumber(final int num) throws Exception {
+        if (this.radix.equals("binary")) {
+            return this.getPaddedNumber(Integer.toBinaryString(num));
+        } else if (this.radix.equals("hex")) {
+            return this.getPaddedNumber(Integer.toHexString(num));
+        } else if (this.radix.equals("HEX")) {
+            return this.getPaddedNumber(Integer.toHexString(num).toUpperCase());
+        } else {
+            throw new Exception(String.format("Unexpected format %s.", this.radix));
+        }
+    }
+
+    private String getPaddedNumber(final String num) {
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < this.digits - num.length(); ++i) {
+            sb.append("0");
+        }
+
+        sb.append(num);
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package output;
+
+/**
+ * Intel HEX image of the numbers, each stored big endian in the fewest whole bytes
+ * that hold the data width.
+ *
+ * Addresses count bytes. Data records hold 16 bytes and never cross a 64 KB
+ * segment, an extended linear address record opens each segment after the first.
+ */
+public class IntelHexEncoder extends BufferedOutputEncoder {
+    private static final int RECORD_SIZE = 16;
+    private static final int MAX_RECORD_LENGTH = 1 + 2 * (1 + 2 + 1 + RECORD_SIZE + 1);
+    private static final int DATA_RECORD = 0x00;
+    private static final int END_OF_FILE_RECORD = 0x01;
+    private static final int EXTENDED_LINEAR_ADDRESS_RECORD = 0x04;
+
+    private final int bytesPerNumber;
+    private final int mask;
+    private final byte[] record;
+    private int recordLength;
+    private long address;
+    private long segment;
+
+    public IntelHexEncoder(final int dataWidth, final OutputSink out) {
+        super(out, MAX_RECORD_LENGTH + LINE_SEPARATOR.length);
+
+        this.bytesPerNumber = (dataWidth + 7) / 8;
+        this.mask = dataWidth >= 32 ? -1 : (1 << dataWidth) - 1;
+        this.record = new byte[RECORD_SIZE];
+    }
+
+    @Override
+    public void encode(final int[] verilogNumbers, final int offset, final int count)
+            throws Exception {
+        for (int i = offset; i < offset + count; ++i) {
+            final int verilogNumber = verilogNumbers[i] & this.mask;
+
+            for (int b = this.bytesPerNumber - 1; b >= 0; --b) {
+                this.record[this.recordLength++] = (byte) (verilogNumber >>> 8 * b);
+
+                if (this.recordLength == RECORD_SIZE) {
+                    this.writeDataRecord();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void end() throws Exception {
+        if (this.recordLength > 0) {
+            this.writeDataRecord();
+        }
+
+        this.writeRecord(END_OF_FILE_RECORD, 0, this.record, 0);
+
+        super.end();
+    }
+
+    private void writeDataRecord() throws Exception {
+        if (this.address >>> 32 != 0) {
+            throw new Exception("Intel HEX output is larger than 4 GB.");
+        }
+
+        if (this.address >>> 16 != this.segment) {
+            final byte[] segmentBytes =
+                    new byte[] {(byte) (this.address >>> 24), (byte) (this.address >>> 16)};
+
+            this.segment = this.address >>> 16;
+            this.writeRecord(EXTENDED_LINEAR_ADDRESS_RECORD, 0, segmentBytes,
+                    segmentBytes.length);
+        }
+
+        this.writeRecord(DATA_RECORD, (int) this.address & 0xFFFF, this.record,
+                this.recordLength);
+        this.address += this.recordLength;
+        this.recordLength = 0;
+    }
+
+    private void writeRecord(final int type, final int address, final byte[] data,
+            final int length) throws Exception {
+        int checksum = length + (address >>> 8) + address + type;
+
+        this.reserve(MAX_RECORD_LENGTH + LINE_SEPARATOR.length);
+        this.buffer.put((byte) ':');
+        this.putHex(length, 2);
+        this.putHex(address, 4);
+        this.putHex(type, 2);
+
+        for (int i = 0; i < length; ++i) {
+            this.putHex(data[i] & 0xFF, 2);
+            checksum += data[i];
+        }
+
+        this.putHex(-checksum & 0xFF, 2);
+        this.buffer.put(LINE_SEPARATOR);
+    }
+}
@@ -0,0 +1,79 @@
+package output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sink keeping everything written to it in a growing heap buffer.
+ */
+public class MemoryOutputSink implements OutputSink {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private ByteBuffer buffer;
+
+    public MemoryOutputSink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MemoryOutputSink(final int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(1, initialCapacity));
+    }
+
+    @Override
+    public void write(final ByteBuffer src) {
+        if (src.remaining() > this.buffer.remaining()) {
+            final long required = (long) this.buffer.position() + src.remaining();
+
+            if (required > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Memory output is larger than 2 GB.");
+            }
+
+            final long capacity = Math.max(required, 2L * this.buffer.capacity());
+            final ByteBuffer grown =
+                    ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, capacity));
+
+            this.buffer.flip();
+            grown.put(this.buffer);
+            this.buffer = grown;
+        }
+
+        this.buffer.put(src);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public int size() {
+        return this.buffer.position();
+    }
+
+    /**
+     * Read-only view of the bytes written so far.
+     */
+    public ByteBuffer getBuffer() {
+        final ByteBuffer view = this.buffer.asReadOnlyBuffer();
+
+        view.flip();
+
+        return view;
+    }
+
+    public byte[] toByteArray() {
+        final byte[] bytes = new byte[this.buffer.position()];
+
+        System.arraycopy(this.buffer.array(), 0, bytes, 0, bytes.length);
+
+        return bytes;
+    }
+
+    /**
+     * Forget everything written so far, keeping the buffer for reuse.
+     */
+    public void reset() {
+        this.buffer.clear();
+    }
+}
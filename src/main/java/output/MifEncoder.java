@@ -0,0 +1,76 @@
+package output;
+
+/**
+ * Altera / Intel memory initialization file.
+ *
+ * The header declares the depth of the memory, so the number of samples must be
+ * known before the first one is encoded. Addresses and data are written in hex.
+ */
+public class MifEncoder extends BufferedOutputEncoder {
+    private static final int MAX_ADDRESS_LENGTH = 1 + 16 + 3; // Tab, digits and " : "
+
+    private final int dataWidth;
+    private final EncodedNumberTable data;
+    private long address;
+
+    public MifEncoder(final int dataWidth, final int[] verilogNumbers, final OutputSink out)
+            throws Exception {
+        this(dataWidth, createDataTable(dataWidth, verilogNumbers), out);
+    }
+
+    private MifEncoder(final int dataWidth, final EncodedNumberTable data,
+            final OutputSink out) {
+        super(out, MAX_ADDRESS_LENGTH + data.getMaxTextLength());
+
+        this.dataWidth = dataWidth;
+        this.data = data;
+    }
+
+    private static EncodedNumberTable createDataTable(final int dataWidth,
+            final int[] verilogNumbers) throws Exception {
+        final byte[] suffix = new byte[1 + LINE_SEPARATOR.length];
+
+        suffix[0] = ';';
+        System.arraycopy(LINE_SEPARATOR, 0, suffix, 1, LINE_SEPARATOR.length);
+
+        return new EncodedNumberTable("HEX", (dataWidth + 3) / 4, verilogNumbers, suffix);
+    }
+
+    @Override
+    public void begin(final long count) throws Exception {
+        if (count < 0) {
+            throw new Exception("MIF output needs the number of samples before conversion.");
+        }
+
+        final String separator = System.getProperty("line.separator");
+
+        this.put("WIDTH=" + this.dataWidth + ";" + separator
+                + "DEPTH=" + count + ";" + separator
+                + separator
+                + "ADDRESS_RADIX=HEX;" + separator
+                + "DATA_RADIX=HEX;" + separator
+                + separator
+                + "CONTENT BEGIN" + separator);
+    }
+
+    @Override
+    public void encode(final int[] verilogNumbers, final int offset, final int count)
+            throws Exception {
+        for (int i = offset; i < offset + count; ++i) {
+            final byte[] text = this.data.getText(verilogNumbers[i]);
+
+            this.reserve(MAX_ADDRESS_LENGTH + text.length);
+            this.buffer.put((byte) '\t');
+            this.putHex(this.address++, 1);
+            this.buffer.put((byte) ' ').put((byte) ':').put((byte) ' ');
+            this.buffer.put(text);
+        }
+    }
+
+    @Override
+    public void end() throws Exception {
+        this.put("END;" + System.getProperty("line.separator"));
+
+        super.end();
+    }
+}
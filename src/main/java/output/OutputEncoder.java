@@ -0,0 +1,27 @@
+package output;
+
+/**
+ * Streaming encoder of Verilog numbers into one output format.
+ *
+ * An encoder writes one output to its sink, from begin to end, and is used by one
+ * thread at a time.
+ */
+public interface OutputEncoder {
+    /**
+     * Write anything that comes before the first number.
+     *
+     * @param count Number of Verilog numbers that will follow, -1 if unknown.
+     */
+    void begin(long count) throws Exception;
+
+    /**
+     * Encode count numbers starting at verilogNumbers[offset].
+     */
+    void encode(int[] verilogNumbers, int offset, int count) throws Exception;
+
+    /**
+     * Write anything that comes after the last number and flush the encoder. The
+     * sink is left open.
+     */
+    void end() throws Exception;
+}
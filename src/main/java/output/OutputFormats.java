@@ -0,0 +1,110 @@
+package output;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Names of the output formats and the encoders that produce them.
+ */
+public final class OutputFormats {
+    public static final String BINARY = "binary";
+    public static final String HEX = "hex";
+    public static final String INTEL_HEX = "ihex";
+    public static final String MIF = "mif";
+    public static final String COE = "coe";
+    public static final String RAW = "raw";
+
+    private static final List<String> NAMES =
+            Collections.unmodifiableList(Arrays.asList(BINARY, HEX, INTEL_HEX, MIF, COE, RAW));
+
+    private OutputFormats() {
+    }
+
+    public static List<String> getNames() {
+        return NAMES;
+    }
+
+    public static boolean isSupported(final String format) {
+        return NAMES.contains(format);
+    }
+
+    /**
+     * Usual file name extension of the format, without the dot.
+     */
+    public static String getFileExtension(final String format) throws Exception {
+        if (format.equals(BINARY)) {
+            return "bin";
+        } else if (format.equals(HEX) || format.equals(INTEL_HEX)) {
+            return "hex";
+        } else if (format.equals(MIF) || format.equals(COE) || format.equals(RAW)) {
+            return format;
+        } else {
+            throw new Exception(String.format("Unexpected format %s.", format));
+        }
+    }
+
+    /**
+     * Whether the format is $readmem text, which any range of numbers can be encoded
+     * to on its own.
+     */
+    public static boolean isReadmemFormat(final String format) {
+        return format.equals(BINARY) || format.equals(HEX);
+    }
+
+    /**
+     * Create an encoder of the format writing to out.
+     *
+     * @param bitWidth Digits of $readmem text. Data width of the other formats, the
+     *                 width of the widest number if zero.
+     * @param verilogNumbers Every number that will be encoded, in ascending order.
+     */
+    public static OutputEncoder createEncoder(final String format, final int bitWidth,
+            final int[] verilogNumbers, final OutputSink out) throws Exception {
+        if (isReadmemFormat(format)) {
+            return new ReadmemEncoder(
+                    ReadmemEncoder.createLineTable(format, bitWidth, verilogNumbers), out);
+        }
+
+        final int dataWidth = getDataWidth(bitWidth, verilogNumbers);
+
+        if (format.equals(INTEL_HEX)) {
+            return new IntelHexEncoder(dataWidth, out);
+        } else if (format.equals(MIF)) {
+            return new MifEncoder(dataWidth, verilogNumbers, out);
+        } else if (format.equals(COE)) {
+            return new CoeEncoder(dataWidth, verilogNumbers, out);
+        } else if (format.equals(RAW)) {
+            return new PackedBinaryEncoder(dataWidth, out);
+        } else {
+            throw new Exception(String.format("Unexpected format %s.", format));
+        }
+    }
+
+    private static int getDataWidth(final int bitWidth, final int[] verilogNumbers)
+            throws Exception {
+        // Wide enough for the widest number, negative numbers need all 32 bits
+        if (bitWidth == 0) {
+            int dataWidth = 1;
+
+            for (final int verilogNumber : verilogNumbers) {
+                dataWidth = Math.max(dataWidth, 32 - Integer.numberOfLeadingZeros(verilogNumber));
+            }
+
+            return dataWidth;
+        }
+
+        if (bitWidth < 0 || bitWidth > 32) {
+            throw new Exception(String.format("Unexpected bit width %d.", bitWidth));
+        }
+
+        for (final int verilogNumber : verilogNumbers) {
+            if (bitWidth < 32 && verilogNumber >>> bitWidth != 0) {
+                throw new Exception(String.format(
+                        "Verilog number %d does not fit in %d bits.", verilogNumber, bitWidth));
+            }
+        }
+
+        return bitWidth;
+    }
+}
@@ -0,0 +1,29 @@
+package output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination of converted output bytes.
+ *
+ * Sinks buffer what they are given and write it out in large blocks. A sink is
+ * used by one thread at a time.
+ */
+public interface OutputSink extends Closeable {
+    /**
+     * Write all remaining bytes of src. The sink does not keep a reference to src.
+     */
+    void write(ByteBuffer src) throws IOException;
+
+    /**
+     * Write out anything still buffered.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flush and release the destination.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,46 @@
+package output;
+
+/**
+ * Raw image of the numbers packed back to back, data width bits each, most
+ * significant bit first. The last byte is padded with zero bits.
+ */
+public class PackedBinaryEncoder extends BufferedOutputEncoder {
+    private final int dataWidth;
+    private final long mask;
+    private long bits;
+    private int bitCount;
+
+    public PackedBinaryEncoder(final int dataWidth, final OutputSink out) {
+        super(out, 8);
+
+        this.dataWidth = dataWidth;
+        this.mask = (1L << dataWidth) - 1;
+    }
+
+    @Override
+    public void encode(final int[] verilogNumbers, final int offset, final int count)
+            throws Exception {
+        for (int i = offset; i < offset + count; ++i) {
+            this.bits = this.bits << this.dataWidth | verilogNumbers[i] & this.mask;
+            this.bitCount += this.dataWidth;
+
+            this.reserve(this.bitCount / 8);
+
+            while (this.bitCount >= 8) {
+                this.bitCount -= 8;
+                this.buffer.put((byte) (this.bits >>> this.bitCount));
+            }
+        }
+    }
+
+    @Override
+    public void end() throws Exception {
+        if (this.bitCount > 0) {
+            this.reserve(1);
+            this.buffer.put((byte) (this.bits << 8 - this.bitCount));
+            this.bitCount = 0;
+        }
+
+        super.end();
+    }
+}
@@ -0,0 +1,45 @@
+package output;
+
+/**
+ * $readmemb or $readmemh text, one zero padded number per line.
+ *
+ * Every number is a line of its own, so any range of numbers can be encoded on
+ * its own and the results joined.
+ */
+public class ReadmemEncoder extends BufferedOutputEncoder {
+    private final EncodedNumberTable lines;
+
+    public ReadmemEncoder(final EncodedNumberTable lines, final OutputSink out) {
+        super(out, lines.getMaxTextLength());
+
+        this.lines = lines;
+    }
+
+    /**
+     * Lines of the given numbers, shared by the encoders of one conversion.
+     *
+     * @param format "binary" or "hex".
+     * @param bitWidth Digits to pad the numbers to.
+     */
+    public static EncodedNumberTable createLineTable(final String format, final int bitWidth,
+            final int[] verilogNumbers) throws Exception {
+        return new EncodedNumberTable(format, bitWidth, verilogNumbers, LINE_SEPARATOR);
+    }
+
+    @Override
+    public void encode(final int[] verilogNumbers, final int offset, final int count)
+            throws Exception {
+        int encoded = 0;
+
+        while (true) {
+            encoded += this.lines.encode(verilogNumbers, offset + encoded, count - encoded,
+                    this.buffer);
+
+            if (encoded == count) {
+                break;
+            }
+
+            this.flush();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Sink that hands full buffers to a background thread writing them to another sink.
+ *
+ * The converter fills one buffer while the thread writes the ones before it, so
+ * encoding overlaps with the latency of the destination. Errors of the thread are
+ * raised by the next write, flush or close.
+ */
+public class WriteBehindOutputSink implements OutputSink {
+    private static final Chunk FLUSH = new Chunk(0);
+    private static final Chunk END_OF_OUTPUT = new Chunk(0);
+
+    private final OutputSink target;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<Chunk> empty;
+    private final BlockingQueue<Chunk> flushed;
+    private final Thread thread;
+    private volatile IOException failure;
+
+    private Chunk current;
+    private boolean closed;
+
+    private static final class Chunk {
+        private final ByteBuffer data;
+
+        private Chunk(final int size) {
+            this.data = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    public WriteBehindOutputSink(final OutputSink target, final int bufferSize,
+            final int bufferCount) {
+        if (bufferSize < 1 || bufferCount < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Unexpected write-behind buffers %d of %d bytes.", bufferCount, bufferSize));
+        }
+
+        this.target = target;
+        this.filled = new ArrayBlockingQueue<Chunk>(bufferCount + 2);
+        this.empty = new ArrayBlockingQueue<Chunk>(bufferCount);
+        this.flushed = new ArrayBlockingQueue<Chunk>(1);
+
+        for (int i = 0; i < bufferCount; ++i) {
+            this.empty.add(new Chunk(bufferSize));
+        }
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WriteBehindOutputSink.this.drain();
+            }
+        }, "Output write-behind");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs on the background thread until the end of the output or an interrupt.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                final Chunk chunk = this.filled.take();
+
+                if (chunk == END_OF_OUTPUT) {
+                    return;
+                }
+
+                if (chunk == FLUSH) {
+                    if (this.failure == null) {
+                        try {
+                            this.target.flush();
+                        } catch (final IOException e) {
+                            this.failure = e;
+                        }
+                    }
+
+                    // A flush given up by an interrupt may have left its token behind
+                    this.flushed.offer(FLUSH);
+                    continue;
+                }
+
+                // Keep draining after a failure, so the writer never waits for a buffer
+                if (this.failure == null) {
+                    try {
+                        chunk.data.flip();
+                        this.target.write(chunk.data);
+                    } catch (final IOException e) {
+                        this.failure = e;
+                    }
+                }
+
+                chunk.data.clear();
+                this.empty.put(chunk);
+            }
+        } catch (final InterruptedException e) {
+            return;
+        }
+    }
+
+    @Override
+    public void write(final ByteBuffer src) throws IOException {
+        this.checkFailure();
+
+        while (src.hasRemaining()) {
+            if (this.current == null) {
+                this.current = this.take(this.empty);
+            }
+
+            final ByteBuffer data = this.current.data;
+            final int count = Math.min(src.remaining(), data.remaining());
+            final ByteBuffer part = src.duplicate();
+
+            part.limit(part.position() + count);
+            data.put(part);
+            src.position(src.position() + count);
+
+            if (!data.hasRemaining()) {
+                this.handOver();
+            }
+        }
+    }
+
+    /**
+     * Wait until everything written so far has reached the target and the target
+     * has been flushed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.current != null && this.current.data.position() > 0) {
+            this.handOver();
+        }
+
+        this.put(FLUSH);
+        this.take(this.flushed);
+        this.checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        try {
+            this.flush();
+        } finally {
+            this.closed = true;
+            this.stopThread();
+            this.target.close();
+        }
+    }
+
+    /**
+     * Let the background thread write what was handed over and wait for it to end,
+     * so it no longer uses the target. If a failed flush left the queue full, the
+     * thread is interrupted instead.
+     */
+    private void stopThread() {
+        boolean interrupted = false;
+
+        if (!this.filled.offer(END_OF_OUTPUT)) {
+            this.thread.interrupt();
+        }
+
+        while (true) {
+            try {
+                this.thread.join();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handOver() throws IOException {
+        this.put(this.current);
+        this.current = null;
+    }
+
+    private void put(final Chunk chunk) throws IOException {
+        try {
+            this.filled.put(chunk);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while handing over output");
+        }
+    }
+
+    private Chunk take(final BlockingQueue<Chunk> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for output");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+}
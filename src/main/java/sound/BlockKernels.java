@@ -0,0 +1,215 @@
+package sound;
+
+// Widening and deinterleaving kernels for 16 and 24 bit PCM
+// Samples are first copied out of the byte buffer into a small primitive block,
+// with a bulk get for 16 bit data. The kernels then run simple counted loops
+// over plain arrays, which the JIT compiles to SIMD instructions where the
+// platform has them, instead of one bounds checked buffer access per sample.
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+final class BlockKernels
+{
+    final static int BLOCK_SIZE = 4096; // Samples per block, small enough to stay in L1 cache
+
+    // Decoders are shared between files and threads, so each thread gets its own blocks
+    private final static ThreadLocal<short[]> SHORT_BLOCK = new ThreadLocal<short[]>() {
+        @Override
+        protected short[] initialValue()
+        {
+            return new short[BLOCK_SIZE];
+        }
+    };
+    private final static ThreadLocal<int[]> INT_BLOCK = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue()
+        {
+            return new int[BLOCK_SIZE];
+        }
+    };
+    private final static ThreadLocal<byte[]> BYTE_BLOCK = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[BLOCK_SIZE * 3];
+        }
+    };
+
+    private BlockKernels()
+    {
+    }
+
+    static short[] shortBlock()
+    {
+        return SHORT_BLOCK.get();
+    }
+
+    static int[] intBlock()
+    {
+        return INT_BLOCK.get();
+    }
+
+    // Little endian view of the 16 bit samples of src starting at srcPos
+    static ShortBuffer shortView(final ByteBuffer src, final int srcPos)
+    {
+        final ByteBuffer view = src.duplicate();
+        view.position(srcPos);
+
+        return view.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    // Assemble count packed 24 bit samples starting at srcPos into block, srcPos is
+    // advanced by the caller
+    static void get24(final ByteBuffer src, final int srcPos, final int[] block, final int count)
+    {
+        final byte[] bytes = BYTE_BLOCK.get();
+        final ByteBuffer view = src.duplicate();
+
+        view.position(srcPos);
+        view.get(bytes, 0, count * 3);
+
+        for (int i = 0, b = 0; i < count; i++, b += 3) {
+            block[i] = bytes[b] & 0xFF | (bytes[b + 1] & 0xFF) << 8 | bytes[b + 2] << 16;
+        }
+    }
+
+    // Interleaved samples
+    // -------------------
+    static void widen(final short[] block, final int count, final double[] dst, final int dstPos,
+            final double floatOffset, final double floatScale)
+    {
+        for (int i = 0; i < count; i++) {
+            dst[dstPos + i] = floatOffset + block[i] / floatScale;
+        }
+    }
+
+    static void widen(final short[] block, final int count, final float[] dst, final int dstPos,
+            final double floatOffset, final double floatScale)
+    {
+        for (int i = 0; i < count; i++) {
+            dst[dstPos + i] = (float) (floatOffset + block[i] / floatScale);
+        }
+    }
+
+    static void widen(final int[] block, final int count, final double[] dst, final int dstPos,
+            final double floatOffset, final double floatScale)
+    {
+        for (int i = 0; i < count; i++) {
+            dst[dstPos + i] = floatOffset + block[i] / floatScale;
+        }
+    }
+
+    static void widen(final int[] block, final int count, final float[] dst, final int dstPos,
+            final double floatOffset, final double floatScale)
+    {
+        for (int i = 0; i < count; i++) {
+            dst[dstPos + i] = (float) (floatOffset + block[i] / floatScale);
+        }
+    }
+
+    // One array per channel
+    // ---------------------
+    // Split numFrames frames of numChannels samples each. Stereo, by far the most
+    // common layout, gets a loop of its own that fills both channels in one pass.
+    static void deinterleave(final short[] block, final int numFrames, final int numChannels,
+            final double[][] dst, final int dstPos, final double floatOffset,
+            final double floatScale)
+    {
+        if (numChannels == 2)
+        {
+            final double[] left = dst[0];
+            final double[] right = dst[1];
+            for (int f = 0; f < numFrames; f++)
+            {
+                left[dstPos + f] = floatOffset + block[2 * f] / floatScale;
+                right[dstPos + f] = floatOffset + block[2 * f + 1] / floatScale;
+            }
+            return;
+        }
+
+        for (int c = 0; c < numChannels; c++)
+        {
+            final double[] channel = dst[c];
+            for (int f = 0, i = c; f < numFrames; f++, i += numChannels) {
+                channel[dstPos + f] = floatOffset + block[i] / floatScale;
+            }
+        }
+    }
+
+    static void deinterleave(final short[] block, final int numFrames, final int numChannels,
+            final float[][] dst, final int dstPos, final double floatOffset,
+            final double floatScale)
+    {
+        if (numChannels == 2)
+        {
+            final float[] left = dst[0];
+            final float[] right = dst[1];
+            for (int f = 0; f < numFrames; f++)
+            {
+                left[dstPos + f] = (float) (floatOffset + block[2 * f] / floatScale);
+                right[dstPos + f] = (float) (floatOffset + block[2 * f + 1] / floatScale);
+            }
+            return;
+        }
+
+        for (int c = 0; c < numChannels; c++)
+        {
+            final float[] channel = dst[c];
+            for (int f = 0, i = c; f < numFrames; f++, i += numChannels) {
+                channel[dstPos + f] = (float) (floatOffset + block[i] / floatScale);
+            }
+        }
+    }
+
+    static void deinterleave(final int[] block, final int numFrames, final int numChannels,
+            final double[][] dst, final int dstPos, final double floatOffset,
+            final double floatScale)
+    {
+        if (numChannels == 2)
+        {
+            final double[] left = dst[0];
+            final double[] right = dst[1];
+            for (int f = 0; f < numFrames; f++)
+            {
+                left[dstPos + f] = floatOffset + block[2 * f] / floatScale;
+                right[dstPos + f] = floatOffset + block[2 * f + 1] / floatScale;
+            }
+            return;
+        }
+
+        for (int c = 0; c < numChannels; c++)
+        {
+            final double[] channel = dst[c];
+            for (int f = 0, i = c; f < numFrames; f++, i += numChannels) {
+                channel[dstPos + f] = floatOffset + block[i] / floatScale;
+            }
+        }
+    }
+
+    static void deinterleave(final int[] block, final int numFrames, final int numChannels,
+            final float[][] dst, final int dstPos, final double floatOffset,
+            final double floatScale)
+    {
+        if (numChannels == 2)
+        {
+            final float[] left = dst[0];
+            final float[] right = dst[1];
+            for (int f = 0; f < numFrames; f++)
+            {
+                left[dstPos + f] = (float) (floatOffset + block[2 * f] / floatScale);
+                right[dstPos + f] = (float) (floatOffset + block[2 * f + 1] / floatScale);
+            }
+            return;
+        }
+
+        for (int c = 0; c < numChannels; c++)
+        {
+            final float[] channel = dst[c];
+            for (int f = 0, i = c; f < numFrames; f++, i += numChannels) {
+                channel[dstPos + f] = (float) (floatOffset + block[i] / floatScale);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package sound;
+
+// Broadcast Wave Format metadata from the bext chunk of a wav file (EBU Tech 3285)
+
+public final class BroadcastExtension
+{
+    private final String description;
+    private final String originator;
+    private final String originatorReference;
+    private final String originationDate; // yyyy-mm-dd
+    private final String originationTime; // hh-mm-ss
+    private final long timeReference; // First frame, counted in samples since midnight
+    private final int version;
+    private final String codingHistory;
+
+    BroadcastExtension(final String description, final String originator,
+            final String originatorReference, final String originationDate,
+            final String originationTime, final long timeReference, final int version,
+            final String codingHistory)
+    {
+        this.description = description;
+        this.originator = originator;
+        this.originatorReference = originatorReference;
+        this.originationDate = originationDate;
+        this.originationTime = originationTime;
+        this.timeReference = timeReference;
+        this.version = version;
+        this.codingHistory = codingHistory;
+    }
+
+    public String getDescription()
+    {
+        return this.description;
+    }
+
+    public String getOriginator()
+    {
+        return this.originator;
+    }
+
+    public String getOriginatorReference()
+    {
+        return this.originatorReference;
+    }
+
+    public String getOriginationDate()
+    {
+        return this.originationDate;
+    }
+
+    public String getOriginationTime()
+    {
+        return this.originationTime;
+    }
+
+    public long getTimeReference()
+    {
+        return this.timeReference;
+    }
+
+    public int getVersion()
+    {
+        return this.version;
+    }
+
+    public String getCodingHistory()
+    {
+        return this.codingHistory;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Description: %s, Originator: %s, Date: %s %s, Time Reference: %d",
+                this.description, this.originator, this.originationDate, this.originationTime,
+                this.timeReference);
+    }
+}
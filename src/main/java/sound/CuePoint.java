@@ -0,0 +1,61 @@
+package sound;
+
+// Marker from the cue chunk of a wav file
+
+public final class CuePoint
+{
+    private final long id; // Unique ID, referenced by smpl loops and LIST adtl labels
+    private final long position; // Sample position in play order
+    private final String dataChunkId; // "data", or "slnt" for a silence chunk in a wave list
+    private final long chunkStart; // Offset of the data chunk, 0 for a single data chunk
+    private final long blockStart; // Offset of the block holding the cue, 0 for PCM
+    private final long sampleOffset; // Frame of the cue, from blockStart
+
+    CuePoint(final long id, final long position, final String dataChunkId,
+            final long chunkStart, final long blockStart, final long sampleOffset)
+    {
+        this.id = id;
+        this.position = position;
+        this.dataChunkId = dataChunkId;
+        this.chunkStart = chunkStart;
+        this.blockStart = blockStart;
+        this.sampleOffset = sampleOffset;
+    }
+
+    public long getId()
+    {
+        return this.id;
+    }
+
+    public long getPosition()
+    {
+        return this.position;
+    }
+
+    public String getDataChunkId()
+    {
+        return this.dataChunkId;
+    }
+
+    public long getChunkStart()
+    {
+        return this.chunkStart;
+    }
+
+    public long getBlockStart()
+    {
+        return this.blockStart;
+    }
+
+    public long getSampleOffset()
+    {
+        return this.sampleOffset;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Cue: %d, Position: %d, Sample Offset: %d", this.id, this.position,
+                this.sampleOffset);
+    }
+}
@@ -0,0 +1,208 @@
+package sound;
+
+// Random access wav file reader
+// Every read names the frame it starts from and goes through positional
+// FileChannel reads, so the reader keeps no read position of its own. One
+// instance can be shared by any number of threads, each decoding its own
+// frame range of the data chunk.
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class PositionalWavReader implements Closeable
+{
+    private final static int BLOCK_SIZE = 1 << 16; // Maximum bytes read per channel call
+
+    private final File file;
+    private final WavHeader header;
+    private final FileChannel channel;
+    private final SampleDecoder decoder;
+    private final SampleDecoder.IntegerDecoder integerDecoder; // Null for floating point data
+    private final double floatScale;
+    private final double floatOffset;
+
+    private PositionalWavReader(final File file, final WavHeader header,
+            final FileChannel channel)
+    {
+        this.file = file;
+        this.header = header;
+        this.channel = channel;
+        this.decoder = SampleDecoder.forHeader(header);
+        this.integerDecoder = SampleDecoder.forIntegerHeader(header);
+        this.floatScale = header.getFloatScale();
+        this.floatOffset = header.getFloatOffset();
+    }
+
+    public static PositionalWavReader open(final File file) throws IOException, WavFileException
+    {
+        final WavHeader header;
+        final FileInputStream in = new FileInputStream(file);
+
+        try
+        {
+            header = WavHeader.read(in, file.length());
+        } finally
+        {
+            in.close();
+        }
+
+        return new PositionalWavReader(file, header,
+                FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    public WavHeader getHeader()
+    {
+        return this.header;
+    }
+
+    public long getNumFrames()
+    {
+        return this.header.getNumFrames();
+    }
+
+    // Integer
+    // -------
+    public int readFrames(final long startFrame, final int[] sampleBuffer, int offset,
+            final int numFramesToRead) throws IOException, WavFileException
+    {
+        final SampleDecoder.IntegerDecoder decoder = this.getIntegerDecoder();
+        final int numChannels = this.header.getNumChannels();
+        final int bytesPerSample = this.header.getBytesPerSample();
+        final int framesToRead = this.getFramesToRead(startFrame, numFramesToRead);
+        final ByteBuffer block = this.allocateBlock(framesToRead);
+
+        for (int f = 0; f < framesToRead;)
+        {
+            final int frames = this.readBlock(block, startFrame + f, framesToRead - f);
+            final int samples = frames * numChannels;
+
+            decoder.decode(block, 0, bytesPerSample, sampleBuffer, offset, samples);
+
+            offset += samples;
+            f += frames;
+        }
+
+        return framesToRead;
+    }
+
+    // Long
+    // ----
+    public int readFrames(final long startFrame, final long[] sampleBuffer, int offset,
+            final int numFramesToRead) throws IOException, WavFileException
+    {
+        final SampleDecoder.IntegerDecoder decoder = this.getIntegerDecoder();
+        final int numChannels = this.header.getNumChannels();
+        final int bytesPerSample = this.header.getBytesPerSample();
+        final int framesToRead = this.getFramesToRead(startFrame, numFramesToRead);
+        final ByteBuffer block = this.allocateBlock(framesToRead);
+
+        for (int f = 0; f < framesToRead;)
+        {
+            final int frames = this.readBlock(block, startFrame + f, framesToRead - f);
+            final int samples = frames * numChannels;
+
+            decoder.decode(block, 0, bytesPerSample, sampleBuffer, offset, samples);
+
+            offset += samples;
+            f += frames;
+        }
+
+        return framesToRead;
+    }
+
+    // Double
+    // ------
+    public int readFrames(final long startFrame, final double[] sampleBuffer, int offset,
+            final int numFramesToRead) throws IOException, WavFileException
+    {
+        final int numChannels = this.header.getNumChannels();
+        final int bytesPerSample = this.header.getBytesPerSample();
+        final int framesToRead = this.getFramesToRead(startFrame, numFramesToRead);
+        final ByteBuffer block = this.allocateBlock(framesToRead);
+
+        for (int f = 0; f < framesToRead;)
+        {
+            final int frames = this.readBlock(block, startFrame + f, framesToRead - f);
+            final int samples = frames * numChannels;
+
+            this.decoder.decode(block, 0, bytesPerSample, sampleBuffer, offset, samples,
+                    this.floatOffset, this.floatScale);
+
+            offset += samples;
+            f += frames;
+        }
+
+        return framesToRead;
+    }
+
+    // Block reading
+    // -------------
+    // Floating point samples can only be read into double and float buffers
+    private SampleDecoder.IntegerDecoder getIntegerDecoder() throws WavFileException
+    {
+        if (this.integerDecoder == null) {
+            throw new WavFileException("Floating point samples cannot be read as integers");
+        }
+
+        return this.integerDecoder;
+    }
+
+    private int getFramesToRead(final long startFrame, final int numFramesToRead)
+            throws WavFileException
+    {
+        if (startFrame < 0 || startFrame > this.header.getNumFrames()) {
+            throw new WavFileException("Start frame " + startFrame
+                    + " is outside of the data chunk");
+        }
+
+        return (int) Math.min(numFramesToRead, this.header.getNumFrames() - startFrame);
+    }
+
+    // Each call gets its own block buffer, this is what keeps the reader thread-safe
+    private ByteBuffer allocateBlock(final int numFrames)
+    {
+        final int blockAlign = this.header.getBlockAlign();
+        final int blockFrames = Math.max(1, Math.min(numFrames, BLOCK_SIZE / blockAlign));
+
+        return ByteBuffer.allocate(blockFrames * blockAlign).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Fill the block with up to numFrames whole frames starting at startFrame
+    private int readBlock(final ByteBuffer block, final long startFrame, final int numFrames)
+            throws IOException, WavFileException
+    {
+        final int blockAlign = this.header.getBlockAlign();
+        final int frames = Math.min(numFrames, block.capacity() / blockAlign);
+        final long position = this.header.getDataOffset() + startFrame * blockAlign;
+
+        block.clear();
+        block.limit(frames * blockAlign);
+
+        while (block.hasRemaining())
+        {
+            final int read = this.channel.read(block, position + block.position());
+            if (read == -1) {
+                throw new WavFileException("Not enough data available");
+            }
+        }
+
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,182 @@
+package sound;
+
+// Input stream that reads ahead on a background thread
+// The thread keeps a fixed number of buffers filled from the source stream
+// while the reader drains the current one, so the latency of the source
+// overlaps with whatever the reader does with the data.
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+final class ReadAheadInputStream extends InputStream
+{
+    private final static Chunk END_OF_STREAM = new Chunk(0); // Queued after the last chunk
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> filled; // Chunks ready to be read, in stream order
+    private final BlockingQueue<Chunk> empty; // Chunks drained by the reader
+    private final Thread thread;
+    private volatile IOException failure; // Error hit by the background thread
+
+    private Chunk current; // Chunk being drained, null when a new one is needed
+    private int currentPointer; // Next unread byte in the current chunk
+    private boolean endReached;
+
+    private static final class Chunk
+    {
+        private final byte[] data;
+        private int length;
+
+        private Chunk(final int size)
+        {
+            this.data = new byte[size];
+        }
+    }
+
+    ReadAheadInputStream(final InputStream source, final int bufferSize, final int bufferCount)
+    {
+        this.source = source;
+        this.filled = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+        this.empty = new ArrayBlockingQueue<Chunk>(bufferCount);
+
+        for (int i = 0; i < bufferCount; i++) {
+            this.empty.add(new Chunk(bufferSize));
+        }
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                ReadAheadInputStream.this.fill();
+            }
+        }, "WavFile read-ahead");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Runs on the background thread until the end of the source or an interrupt
+    private void fill()
+    {
+        try
+        {
+            while (true)
+            {
+                final Chunk chunk = this.empty.take();
+                boolean end = false;
+
+                chunk.length = 0;
+                while (chunk.length < chunk.data.length)
+                {
+                    final int read = this.source.read(chunk.data, chunk.length,
+                            chunk.data.length - chunk.length);
+                    if (read == -1)
+                    {
+                        end = true;
+                        break;
+                    }
+                    chunk.length += read;
+                }
+
+                if (chunk.length > 0) {
+                    this.filled.put(chunk);
+                }
+                if (end) {
+                    break;
+                }
+            }
+        } catch (final IOException e)
+        {
+            this.failure = e;
+        } catch (final InterruptedException e)
+        {
+            return;
+        }
+
+        // There is always room for the marker, the queue holds one more than the chunks
+        this.filled.add(END_OF_STREAM);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (this.current == null || this.currentPointer == this.current.length)
+        {
+            if (this.endReached) {
+                return -1;
+            }
+
+            // Hand the drained chunk back to the background thread
+            if (this.current != null) {
+                this.empty.add(this.current);
+                this.current = null;
+            }
+
+            final Chunk next;
+            try
+            {
+                next = this.filled.take();
+            } catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+
+            if (next == END_OF_STREAM)
+            {
+                this.endReached = true;
+                if (this.failure != null) {
+                    throw this.failure;
+                }
+                return -1;
+            }
+
+            this.current = next;
+            this.currentPointer = 0;
+        }
+
+        final int count = Math.min(len, this.current.length - this.currentPointer);
+        System.arraycopy(this.current.data, this.currentPointer, b, off, count);
+        this.currentPointer += count;
+
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final byte[] b = new byte[1];
+
+        return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    // Stop the background thread and wait for it, leaving the source open at
+    // an unspecified position. Anything read ahead is dropped.
+    void stop() throws IOException
+    {
+        this.thread.interrupt();
+
+        try
+        {
+            this.thread.join();
+        } catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping read-ahead");
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // The thread may be blocked reading the source, closing it wakes it up
+        this.thread.interrupt();
+        this.source.close();
+    }
+}
@@ -0,0 +1,39 @@
+package sound;
+
+// Location of one chunk of a RIFF file
+// Only the chunk header is read to build it, the payload is left on disk.
+
+public final class RiffChunk
+{
+    private final String id; // Four character chunk ID, such as "data" or "LIST"
+    private final long offset; // File offset of the first payload byte
+    private final long size; // Payload size in bytes, without the word align byte
+
+    RiffChunk(final String id, final long offset, final long size)
+    {
+        this.id = id;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public String getId()
+    {
+        return this.id;
+    }
+
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Chunk: %s, Offset: %d, Size: %d", this.id, this.offset, this.size);
+    }
+}
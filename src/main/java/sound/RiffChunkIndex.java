@@ -0,0 +1,203 @@
+package sound;
+
+// Index of every chunk in a wav file, including any after the data chunk
+// Building the index reads the 8 byte chunk headers only, hopping from one
+// header to the next with positional reads. Payloads are read when one of the
+// typed accessors asks for them, so fetching the loop points of a large file
+// costs a few small reads whatever the length of its data chunk.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class RiffChunkIndex
+{
+    private final static int CUE_POINT_SIZE = 24; // Bytes per cue point
+    private final static int SMPL_HEADER_SIZE = 36; // Bytes before the first sample loop
+    private final static int SAMPLE_LOOP_SIZE = 24; // Bytes per sample loop
+    private final static int BEXT_FIXED_SIZE = 602; // Bytes before the coding history
+
+    private final FileChannel channel;
+    private final List<RiffChunk> chunks;
+
+    private RiffChunkIndex(final FileChannel channel, final List<RiffChunk> chunks)
+    {
+        this.channel = channel;
+        this.chunks = chunks;
+    }
+
+    static RiffChunkIndex read(final FileChannel channel, final WavHeader header)
+            throws IOException
+    {
+        final long fileSize = channel.size();
+        final ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        final List<RiffChunk> chunks = new ArrayList<RiffChunk>();
+
+        // The first chunk follows the RIFF ID, size and type
+        long position = 12;
+
+        while (position + 8 <= fileSize)
+        {
+            chunkHeader.clear();
+            readFully(channel, chunkHeader, position);
+
+            final int chunkID = chunkHeader.getInt(0);
+            final long offset = position + 8;
+            long chunkSize = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+
+            // The size field of the data chunk may be a placeholder, or point to a
+            // ds64 chunk, the header holds the real size
+            if (chunkID == WavFile.DATA_CHUNK_ID && offset == header.getDataOffset()
+                    && header.isNumFramesKnown()) {
+                chunkSize = header.getNumFrames() * header.getBlockAlign();
+            }
+
+            chunks.add(new RiffChunk(new String(chunkHeader.array(), 0, 4,
+                    StandardCharsets.US_ASCII), offset, chunkSize));
+
+            // Chunks are word aligned
+            position = offset + chunkSize + chunkSize % 2;
+        }
+
+        return new RiffChunkIndex(channel, Collections.unmodifiableList(chunks));
+    }
+
+    List<RiffChunk> getChunks()
+    {
+        return this.chunks;
+    }
+
+    // First chunk with the given ID, null if there is none
+    RiffChunk find(final String id)
+    {
+        for (final RiffChunk chunk : this.chunks)
+        {
+            if (chunk.getId().equals(id)) {
+                return chunk;
+            }
+        }
+
+        return null;
+    }
+
+    List<CuePoint> readCuePoints() throws IOException, WavFileException
+    {
+        final RiffChunk chunk = this.find("cue ");
+        if (chunk == null) {
+            return Collections.emptyList();
+        }
+
+        final ByteBuffer payload = this.readPayload(chunk);
+        final long numCuePoints = payload.remaining() >= 4 ? getUnsigned(payload, 0) : -1;
+        if (numCuePoints < 0 || 4 + numCuePoints * CUE_POINT_SIZE > payload.remaining()) {
+            throw new WavFileException("cue chunk is too small for its cue points");
+        }
+
+        final List<CuePoint> cuePoints = new ArrayList<CuePoint>((int) numCuePoints);
+        for (int pos = 4; cuePoints.size() < numCuePoints; pos += CUE_POINT_SIZE)
+        {
+            cuePoints.add(new CuePoint(getUnsigned(payload, pos),
+                    getUnsigned(payload, pos + 4), getString(payload, pos + 8, 4),
+                    getUnsigned(payload, pos + 12), getUnsigned(payload, pos + 16),
+                    getUnsigned(payload, pos + 20)));
+        }
+
+        return Collections.unmodifiableList(cuePoints);
+    }
+
+    List<SampleLoop> readSampleLoops() throws IOException, WavFileException
+    {
+        final RiffChunk chunk = this.find("smpl");
+        if (chunk == null) {
+            return Collections.emptyList();
+        }
+
+        final ByteBuffer payload = this.readPayload(chunk);
+        final long numSampleLoops =
+                payload.remaining() >= SMPL_HEADER_SIZE ? getUnsigned(payload, 28) : -1;
+        if (numSampleLoops < 0
+                || SMPL_HEADER_SIZE + numSampleLoops * SAMPLE_LOOP_SIZE > payload.remaining()) {
+            throw new WavFileException("smpl chunk is too small for its sample loops");
+        }
+
+        final List<SampleLoop> loops = new ArrayList<SampleLoop>((int) numSampleLoops);
+        for (int pos = SMPL_HEADER_SIZE; loops.size() < numSampleLoops; pos += SAMPLE_LOOP_SIZE)
+        {
+            loops.add(new SampleLoop(getUnsigned(payload, pos), getUnsigned(payload, pos + 4),
+                    getUnsigned(payload, pos + 8), getUnsigned(payload, pos + 12),
+                    getUnsigned(payload, pos + 16), getUnsigned(payload, pos + 20)));
+        }
+
+        return Collections.unmodifiableList(loops);
+    }
+
+    BroadcastExtension readBroadcastExtension() throws IOException, WavFileException
+    {
+        final RiffChunk chunk = this.find("bext");
+        if (chunk == null) {
+            return null;
+        }
+
+        final ByteBuffer payload = this.readPayload(chunk);
+        if (payload.remaining() < BEXT_FIXED_SIZE) {
+            throw new WavFileException("bext chunk is too small");
+        }
+
+        return new BroadcastExtension(getString(payload, 0, 256), getString(payload, 256, 32),
+                getString(payload, 288, 32), getString(payload, 320, 10),
+                getString(payload, 330, 8), payload.getLong(338), payload.getShort(346) & 0xFFFF,
+                getString(payload, BEXT_FIXED_SIZE, payload.remaining() - BEXT_FIXED_SIZE));
+    }
+
+    // Read the whole payload of a chunk, these are all small
+    private ByteBuffer readPayload(final RiffChunk chunk) throws IOException, WavFileException
+    {
+        if (chunk.getOffset() + chunk.getSize() > this.channel.size()) {
+            throw new WavFileException("Chunk " + chunk.getId() + " is truncated");
+        }
+        if (chunk.getSize() > Integer.MAX_VALUE) {
+            throw new WavFileException("Chunk " + chunk.getId() + " is too large to read");
+        }
+
+        final ByteBuffer payload =
+                ByteBuffer.allocate((int) chunk.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(this.channel, payload, chunk.getOffset());
+        payload.flip();
+
+        return payload;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer dst,
+            long position) throws IOException
+    {
+        while (dst.hasRemaining())
+        {
+            final int read = channel.read(dst, position);
+            if (read == -1) {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static long getUnsigned(final ByteBuffer buffer, final int pos)
+    {
+        return buffer.getInt(pos) & 0xFFFFFFFFL;
+    }
+
+    // Fixed size text fields are padded with zero bytes
+    private static String getString(final ByteBuffer buffer, final int pos, final int length)
+    {
+        int end = pos;
+        while (end < pos + length && buffer.get(end) != 0) {
+            end++;
+        }
+
+        return new String(buffer.array(), pos, end - pos, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,594 @@
+package sound;
+
+// Block decoders for little endian PCM and IEEE float samples
+// A decoder is picked once per file from the sample format and width, and
+// every readFrames call hands it whole blocks of samples, so the inner loops
+// never check buffer bounds or assemble samples one byte at a time.
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+abstract class SampleDecoder
+{
+    private final static IntegerDecoder UNSIGNED_8 = new Unsigned8Decoder();
+    private final static IntegerDecoder SIGNED_16 = new Signed16Decoder();
+    private final static IntegerDecoder SIGNED_24 = new Signed24Decoder();
+    private final static IntegerDecoder SIGNED_32 = new Signed32Decoder();
+    private final static SampleDecoder FLOAT_32 = new Float32Decoder();
+    private final static SampleDecoder FLOAT_64 = new Float64Decoder();
+
+    static SampleDecoder forHeader(final WavHeader header)
+    {
+        if (header.isFloatingPoint()) {
+            return header.getBytesPerSample() == 4 ? FLOAT_32 : FLOAT_64;
+        }
+
+        return forIntegerHeader(header);
+    }
+
+    // Returns null for floating point samples, which cannot be read as integers
+    static IntegerDecoder forIntegerHeader(final WavHeader header)
+    {
+        if (header.isFloatingPoint()) {
+            return null;
+        }
+
+        switch (header.getBytesPerSample())
+        {
+        case 1:
+            return UNSIGNED_8;
+        case 2:
+            return SIGNED_16;
+        case 3:
+            return SIGNED_24;
+        case 4:
+            return SIGNED_32;
+        default:
+            return new SignedGenericDecoder(header.getBytesPerSample());
+        }
+    }
+
+    // Each method decodes count samples, the first one at srcPos and the following
+    // ones srcStride bytes apart, into consecutive elements of dst starting at dstPos.
+    // The source buffer must be in little endian order.
+    abstract void decode(ByteBuffer src, int srcPos, int srcStride, double[] dst, int dstPos,
+            int count, double floatOffset, double floatScale);
+
+    // Samples are scaled in double precision and rounded to float once
+    abstract void decode(ByteBuffer src, int srcPos, int srcStride, float[] dst, int dstPos,
+            int count, double floatOffset, double floatScale);
+
+    // Split numFrames interleaved frames, the first one at srcPos, into one array per
+    // channel. Decoders with a block kernel override these, the others decode one
+    // channel at a time.
+    void deinterleave(final ByteBuffer src, final int srcPos, final int numChannels,
+            final int bytesPerSample, final double[][] dst, final int dstPos,
+            final int numFrames, final double floatOffset, final double floatScale)
+    {
+        for (int c = 0; c < numChannels; c++) {
+            this.decode(src, srcPos + c * bytesPerSample, numChannels * bytesPerSample, dst[c],
+                    dstPos, numFrames, floatOffset, floatScale);
+        }
+    }
+
+    void deinterleave(final ByteBuffer src, final int srcPos, final int numChannels,
+            final int bytesPerSample, final float[][] dst, final int dstPos,
+            final int numFrames, final double floatOffset, final double floatScale)
+    {
+        for (int c = 0; c < numChannels; c++) {
+            this.decode(src, srcPos + c * bytesPerSample, numChannels * bytesPerSample, dst[c],
+                    dstPos, numFrames, floatOffset, floatScale);
+        }
+    }
+
+    // Decoders of integer samples, which can also be read as integers
+    abstract static class IntegerDecoder extends SampleDecoder
+    {
+        abstract void decode(ByteBuffer src, int srcPos, int srcStride, int[] dst, int dstPos,
+                int count);
+
+        abstract void decode(ByteBuffer src, int srcPos, int srcStride, long[] dst,
+                int dstPos, int count);
+    }
+
+    // 8 bit data is unsigned
+    private static final class Unsigned8Decoder extends IntegerDecoder
+    {
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final int[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.get(srcPos) & 0xFF;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final long[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.get(srcPos) & 0xFF;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = floatOffset + (src.get(srcPos) & 0xFF) / floatScale;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (float) (floatOffset + (src.get(srcPos) & 0xFF) / floatScale);
+                srcPos += srcStride;
+            }
+        }
+    }
+
+    private static final class Signed16Decoder extends IntegerDecoder
+    {
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final int[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getShort(srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final long[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getShort(srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            // Interleaved samples are widened a block at a time
+            if (srcStride == 2)
+            {
+                final short[] block = BlockKernels.shortBlock();
+                final ShortBuffer samples = BlockKernels.shortView(src, srcPos);
+                for (int done = 0; done < count;)
+                {
+                    final int n = Math.min(count - done, block.length);
+                    samples.get(block, 0, n);
+                    BlockKernels.widen(block, n, dst, dstPos + done, floatOffset, floatScale);
+                    done += n;
+                }
+                return;
+            }
+
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = floatOffset + src.getShort(srcPos) / floatScale;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            // Interleaved samples are widened a block at a time
+            if (srcStride == 2)
+            {
+                final short[] block = BlockKernels.shortBlock();
+                final ShortBuffer samples = BlockKernels.shortView(src, srcPos);
+                for (int done = 0; done < count;)
+                {
+                    final int n = Math.min(count - done, block.length);
+                    samples.get(block, 0, n);
+                    BlockKernels.widen(block, n, dst, dstPos + done, floatOffset, floatScale);
+                    done += n;
+                }
+                return;
+            }
+
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (float) (floatOffset + src.getShort(srcPos) / floatScale);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void deinterleave(final ByteBuffer src, final int srcPos, final int numChannels,
+                final int bytesPerSample, final double[][] dst, final int dstPos,
+                final int numFrames, final double floatOffset, final double floatScale)
+        {
+            final short[] block = BlockKernels.shortBlock();
+            final int blockFrames = block.length / numChannels;
+            if (blockFrames == 0)
+            {
+                super.deinterleave(src, srcPos, numChannels, bytesPerSample, dst, dstPos,
+                        numFrames, floatOffset, floatScale);
+                return;
+            }
+
+            final ShortBuffer samples = BlockKernels.shortView(src, srcPos);
+            for (int done = 0; done < numFrames;)
+            {
+                final int n = Math.min(numFrames - done, blockFrames);
+                samples.get(block, 0, n * numChannels);
+                BlockKernels.deinterleave(block, n, numChannels, dst, dstPos + done, floatOffset,
+                        floatScale);
+                done += n;
+            }
+        }
+
+        @Override
+        void deinterleave(final ByteBuffer src, final int srcPos, final int numChannels,
+                final int bytesPerSample, final float[][] dst, final int dstPos,
+                final int numFrames, final double floatOffset, final double floatScale)
+        {
+            final short[] block = BlockKernels.shortBlock();
+            final int blockFrames = block.length / numChannels;
+            if (blockFrames == 0)
+            {
+                super.deinterleave(src, srcPos, numChannels, bytesPerSample, dst, dstPos,
+                        numFrames, floatOffset, floatScale);
+                return;
+            }
+
+            final ShortBuffer samples = BlockKernels.shortView(src, srcPos);
+            for (int done = 0; done < numFrames;)
+            {
+                final int n = Math.min(numFrames - done, blockFrames);
+                samples.get(block, 0, n * numChannels);
+                BlockKernels.deinterleave(block, n, numChannels, dst, dstPos + done, floatOffset,
+                        floatScale);
+                done += n;
+            }
+        }
+    }
+
+    // 24 bit data is packed into 3 bytes, the most significant one carries the sign
+    private static final class Signed24Decoder extends IntegerDecoder
+    {
+        private static int get24(final ByteBuffer src, final int pos)
+        {
+            return src.get(pos) & 0xFF | (src.get(pos + 1) & 0xFF) << 8 | src.get(pos + 2) << 16;
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final int[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = get24(src, srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final long[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = get24(src, srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            // Interleaved samples are widened a block at a time
+            if (srcStride == 3)
+            {
+                final int[] block = BlockKernels.intBlock();
+                for (int done = 0; done < count;)
+                {
+                    final int n = Math.min(count - done, block.length);
+                    BlockKernels.get24(src, srcPos + done * 3, block, n);
+                    BlockKernels.widen(block, n, dst, dstPos + done, floatOffset, floatScale);
+                    done += n;
+                }
+                return;
+            }
+
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = floatOffset + get24(src, srcPos) / floatScale;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            // Interleaved samples are widened a block at a time
+            if (srcStride == 3)
+            {
+                final int[] block = BlockKernels.intBlock();
+                for (int done = 0; done < count;)
+                {
+                    final int n = Math.min(count - done, block.length);
+                    BlockKernels.get24(src, srcPos + done * 3, block, n);
+                    BlockKernels.widen(block, n, dst, dstPos + done, floatOffset, floatScale);
+                    done += n;
+                }
+                return;
+            }
+
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (float) (floatOffset + get24(src, srcPos) / floatScale);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void deinterleave(final ByteBuffer src, final int srcPos, final int numChannels,
+                final int bytesPerSample, final double[][] dst, final int dstPos,
+                final int numFrames, final double floatOffset, final double floatScale)
+        {
+            final int[] block = BlockKernels.intBlock();
+            final int blockFrames = block.length / numChannels;
+            if (blockFrames == 0)
+            {
+                super.deinterleave(src, srcPos, numChannels, bytesPerSample, dst, dstPos,
+                        numFrames, floatOffset, floatScale);
+                return;
+            }
+
+            for (int done = 0; done < numFrames;)
+            {
+                final int n = Math.min(numFrames - done, blockFrames);
+                BlockKernels.get24(src, srcPos + done * numChannels * 3, block, n * numChannels);
+                BlockKernels.deinterleave(block, n, numChannels, dst, dstPos + done, floatOffset,
+                        floatScale);
+                done += n;
+            }
+        }
+
+        @Override
+        void deinterleave(final ByteBuffer src, final int srcPos, final int numChannels,
+                final int bytesPerSample, final float[][] dst, final int dstPos,
+                final int numFrames, final double floatOffset, final double floatScale)
+        {
+            final int[] block = BlockKernels.intBlock();
+            final int blockFrames = block.length / numChannels;
+            if (blockFrames == 0)
+            {
+                super.deinterleave(src, srcPos, numChannels, bytesPerSample, dst, dstPos,
+                        numFrames, floatOffset, floatScale);
+                return;
+            }
+
+            for (int done = 0; done < numFrames;)
+            {
+                final int n = Math.min(numFrames - done, blockFrames);
+                BlockKernels.get24(src, srcPos + done * numChannels * 3, block, n * numChannels);
+                BlockKernels.deinterleave(block, n, numChannels, dst, dstPos + done, floatOffset,
+                        floatScale);
+                done += n;
+            }
+        }
+    }
+
+    private static final class Signed32Decoder extends IntegerDecoder
+    {
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final int[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getInt(srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final long[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getInt(srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = floatOffset + src.getInt(srcPos) / floatScale;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (float) (floatOffset + src.getInt(srcPos) / floatScale);
+                srcPos += srcStride;
+            }
+        }
+    }
+
+    // Any other width up to 8 bytes, assembled into a long
+    private static final class SignedGenericDecoder extends IntegerDecoder
+    {
+        private final int bytesPerSample;
+
+        SignedGenericDecoder(final int bytesPerSample)
+        {
+            this.bytesPerSample = bytesPerSample;
+        }
+
+        private long getSample(final ByteBuffer src, final int pos)
+        {
+            long val = src.get(pos + this.bytesPerSample - 1);
+            for (int b = this.bytesPerSample - 2; b >= 0; b--) {
+                val = val << 8 | src.get(pos + b) & 0xFF;
+            }
+
+            return val;
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final int[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (int) this.getSample(src, srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final long[] dst,
+                final int dstPos, final int count)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = this.getSample(src, srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = floatOffset + this.getSample(src, srcPos) / floatScale;
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (float) (floatOffset + this.getSample(src, srcPos) / floatScale);
+                srcPos += srcStride;
+            }
+        }
+    }
+
+    // Floating point samples are normalised already, they are copied into double
+    // and float buffers as they are
+    private static final class Float32Decoder extends SampleDecoder
+    {
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getFloat(srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            // Interleaved samples are a straight bulk copy
+            if (srcStride == 4)
+            {
+                final ByteBuffer view = src.duplicate();
+                view.position(srcPos);
+                view.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(dst, dstPos, count);
+                return;
+            }
+
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getFloat(srcPos);
+                srcPos += srcStride;
+            }
+        }
+    }
+
+    private static final class Float64Decoder extends SampleDecoder
+    {
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final double[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            // Interleaved samples are a straight bulk copy
+            if (srcStride == 8)
+            {
+                final ByteBuffer view = src.duplicate();
+                view.position(srcPos);
+                view.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(dst, dstPos, count);
+                return;
+            }
+
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = src.getDouble(srcPos);
+                srcPos += srcStride;
+            }
+        }
+
+        @Override
+        void decode(final ByteBuffer src, int srcPos, final int srcStride, final float[] dst,
+                final int dstPos, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = dstPos; i < dstPos + count; i++)
+            {
+                dst[i] = (float) src.getDouble(srcPos);
+                srcPos += srcStride;
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package sound;
+
+// Block encoders for little endian PCM samples
+// The write side counterpart of SampleDecoder. An encoder is picked once per
+// file from the sample width, and every writeFrames call hands it whole blocks
+// of frames, so samples are stored with one put per sample instead of being
+// split into bytes one at a time.
+
+import java.nio.ByteBuffer;
+
+abstract class SampleEncoder
+{
+    private final static SampleEncoder UNSIGNED_8 = new Unsigned8Encoder();
+    private final static SampleEncoder SIGNED_16 = new Signed16Encoder();
+    private final static SampleEncoder SIGNED_24 = new Signed24Encoder();
+    private final static SampleEncoder SIGNED_32 = new Signed32Encoder();
+
+    static SampleEncoder forBytesPerSample(final int bytesPerSample)
+    {
+        switch (bytesPerSample)
+        {
+        case 1:
+            return UNSIGNED_8;
+        case 2:
+            return SIGNED_16;
+        case 3:
+            return SIGNED_24;
+        case 4:
+            return SIGNED_32;
+        default:
+            return new SignedGenericEncoder(bytesPerSample);
+        }
+    }
+
+    // Each method encodes count consecutive elements of src starting at srcPos, the
+    // first one at dstPos and the following ones dstStride bytes apart. Only the low
+    // bytes of each value are stored. The destination buffer must be in little
+    // endian order.
+    abstract void encode(int[] src, int srcPos, ByteBuffer dst, int dstPos, int dstStride,
+            int count);
+
+    abstract void encode(long[] src, int srcPos, ByteBuffer dst, int dstPos, int dstStride,
+            int count);
+
+    // Normalised values are scaled back with (long) (floatScale * (floatOffset + value))
+    abstract void encode(double[] src, int srcPos, ByteBuffer dst, int dstPos, int dstStride,
+            int count, double floatOffset, double floatScale);
+
+    abstract void encode(float[] src, int srcPos, ByteBuffer dst, int dstPos, int dstStride,
+            int count, double floatOffset, double floatScale);
+
+    private static final class Unsigned8Encoder extends SampleEncoder
+    {
+        @Override
+        void encode(final int[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.put(dstPos, (byte) src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final long[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.put(dstPos, (byte) src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final double[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.put(dstPos, (byte) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final float[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.put(dstPos, (byte) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+    }
+
+    private static final class Signed16Encoder extends SampleEncoder
+    {
+        @Override
+        void encode(final int[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putShort(dstPos, (short) src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final long[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putShort(dstPos, (short) src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final double[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putShort(dstPos, (short) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final float[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putShort(dstPos, (short) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+    }
+
+    // 24 bit data is packed into 3 bytes
+    private static final class Signed24Encoder extends SampleEncoder
+    {
+        private static void put24(final ByteBuffer dst, final int pos, final int val)
+        {
+            dst.put(pos, (byte) val);
+            dst.put(pos + 1, (byte) (val >> 8));
+            dst.put(pos + 2, (byte) (val >> 16));
+        }
+
+        @Override
+        void encode(final int[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                put24(dst, dstPos, src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final long[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                put24(dst, dstPos, (int) src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final double[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                put24(dst, dstPos, (int) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final float[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                put24(dst, dstPos, (int) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+    }
+
+    private static final class Signed32Encoder extends SampleEncoder
+    {
+        @Override
+        void encode(final int[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putInt(dstPos, src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final long[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putInt(dstPos, (int) src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final double[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putInt(dstPos, (int) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final float[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                dst.putInt(dstPos, (int) (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+    }
+
+    // Any other width, stored from a long. Bytes past the eighth hold the sign.
+    private static final class SignedGenericEncoder extends SampleEncoder
+    {
+        private final int bytesPerSample;
+
+        SignedGenericEncoder(final int bytesPerSample)
+        {
+            this.bytesPerSample = bytesPerSample;
+        }
+
+        private void putSample(final ByteBuffer dst, final int pos, long val)
+        {
+            for (int b = 0; b < this.bytesPerSample; b++)
+            {
+                dst.put(pos + b, (byte) val);
+                val >>= 8;
+            }
+        }
+
+        @Override
+        void encode(final int[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                this.putSample(dst, dstPos, src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final long[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                this.putSample(dst, dstPos, src[i]);
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final double[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                this.putSample(dst, dstPos, (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+
+        @Override
+        void encode(final float[] src, final int srcPos, final ByteBuffer dst, int dstPos,
+                final int dstStride, final int count, final double floatOffset,
+                final double floatScale)
+        {
+            for (int i = srcPos; i < srcPos + count; i++)
+            {
+                this.putSample(dst, dstPos, (long) (floatScale * (floatOffset + src[i])));
+                dstPos += dstStride;
+            }
+        }
+    }
+}
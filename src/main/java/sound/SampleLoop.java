@@ -0,0 +1,65 @@
+package sound;
+
+// Loop from the smpl chunk of a wav file
+
+public final class SampleLoop
+{
+    public final static int TYPE_FORWARD = 0;
+    public final static int TYPE_ALTERNATING = 1;
+    public final static int TYPE_BACKWARD = 2;
+
+    private final long cuePointId; // ID of the matching cue point
+    private final long type; // One of the TYPE constants, or a manufacturer specific type
+    private final long start; // First frame of the loop
+    private final long end; // Last frame of the loop, played as well
+    private final long fraction; // Fraction of a frame to add to end, in units of 1/2^32
+    private final long playCount; // Number of times to play the loop, 0 for forever
+
+    SampleLoop(final long cuePointId, final long type, final long start, final long end,
+            final long fraction, final long playCount)
+    {
+        this.cuePointId = cuePointId;
+        this.type = type;
+        this.start = start;
+        this.end = end;
+        this.fraction = fraction;
+        this.playCount = playCount;
+    }
+
+    public long getCuePointId()
+    {
+        return this.cuePointId;
+    }
+
+    public long getType()
+    {
+        return this.type;
+    }
+
+    public long getStart()
+    {
+        return this.start;
+    }
+
+    public long getEnd()
+    {
+        return this.end;
+    }
+
+    public long getFraction()
+    {
+        return this.fraction;
+    }
+
+    public long getPlayCount()
+    {
+        return this.playCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Loop: %d, Type: %d, Start: %d, End: %d, Play Count: %d",
+                this.cuePointId, this.type, this.start, this.end, this.playCount);
+    }
+}
@@ -12,9 +12,18 @@ package sound;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
 public class WavFile
 {
@@ -23,24 +32,30 @@ public class WavFile
     };
 
     private final static int BUFFER_SIZE = 4096;
+    private final static long MAPPED_WINDOW_SIZE = 1L << 28; // Upper bound of a mapped window (256 MB)
 
-    private final static int FMT_CHUNK_ID = 0x20746D66;
-    private final static int DATA_CHUNK_ID = 0x61746164;
-    private final static int RIFF_CHUNK_ID = 0x46464952;
-    private final static int RIFF_TYPE_ID = 0x45564157;
+    final static int FMT_CHUNK_ID = 0x20746D66;
+    final static int DATA_CHUNK_ID = 0x61746164;
+    final static int RIFF_CHUNK_ID = 0x46464952;
+    final static int RIFF_TYPE_ID = 0x45564157;
+    final static int RF64_CHUNK_ID = 0x34364652;
+    final static int BW64_CHUNK_ID = 0x34365742;
+    final static int DS64_CHUNK_ID = 0x34367364;
+
+    final static long MAX_CHUNK_SIZE = 0xFFFFFFFFL; // Largest size a 4 byte size field can hold
 
     private File file; // File that will be read from or written to
     private IOState ioState; // Specifies the IO State of the Wav File (used for snaity checking)
     private int bytesPerSample; // Number of bytes required to store a single sample
     private long numFrames; // Number of frames within the data section
-    private FileOutputStream oStream; // Output stream used for writting data
-    private FileInputStream iStream; // Input stream used for reading data
+    private InputStream iStream; // Input stream used for reading data
     private double floatScale; // Scaling factor used for int <-> float conversion
     private double floatOffset; // Offset factor used for int <-> float conversion
     private boolean wordAlignAdjust; // Specify if an extra byte at the end of the data chunk is
                                      // required for word alignment
 
     // Wav Header
+    private WavHeader header; // Parsed header when reading, null when writing
     private int numChannels; // 2 bytes unsigned, 0x0001 (1) to 0xFFFF (65,535)
     private long sampleRate; // 4 bytes unsigned, 0x00000001 (1) to 0xFFFFFFFF (4,294,967,295)
                              // Although a java int is 4 bytes, it is signed, so need to use a long
@@ -48,10 +63,23 @@ public class WavFile
     private int validBits; // 2 bytes unsigned, 0x0002 (2) to 0xFFFF (65,535)
 
     // Buffering
-    private final byte[] buffer; // Local buffer used for IO
-    private int bufferPointer; // Points to the current position in local buffer
-    private int bytesRead; // Bytes read after last read into local buffer
+    private byte[] buffer; // Local buffer used for IO
+    private ByteBuffer writeBuffer; // Little endian view of the local buffer when writing
+    private ByteBuffer readBuffer; // Little endian view of the unread bytes in local buffer
     private long frameCounter; // Current number of frames read or written
+    private SampleDecoder decoder; // Decoder matching bytesPerSample, used when reading
+    private SampleDecoder.IntegerDecoder integerDecoder; // Null for floating point data
+    private SampleEncoder encoder; // Encoder matching bytesPerSample, used when writing
+    private ReadAheadInputStream readAhead; // Background reader of iStream, null when reading directly
+    private int readAheadBuffers; // Number of buffers the background reader keeps filled
+
+    // File access
+    private FileChannel channel; // Channel of the file, null when reading a plain stream
+    private boolean memoryMapped; // Decode from or encode into mapped windows instead of the local buffer
+    private MappedByteBuffer mappedBuffer; // Currently mapped window of the data chunk
+    private long dataOffset; // File offset of the first byte of the data chunk
+    private long mappedPosition; // File offset of the next window to be mapped
+    private RiffChunkIndex chunkIndex; // Index of all chunks, null until first asked for
 
     // Cannot instantiate WavFile directly, must either use newWavFile() or openWavFile()
     private WavFile()
@@ -84,9 +112,23 @@ public class WavFile
         return this.validBits;
     }
 
+    public WavHeader getHeader()
+    {
+        return this.header;
+    }
+
     public static WavFile newWavFile(final File file, final int numChannels,
             final long numFrames,
             final int validBits, final long sampleRate) throws IOException, WavFileException
+    {
+        return newWavFile(file, numChannels, numFrames, validBits, sampleRate, false);
+    }
+
+    // With memoryMapped set, the file is sized for all numFrames up front and the
+    // frames are encoded straight into mapped windows of the data chunk
+    public static WavFile newWavFile(final File file, final int numChannels,
+            final long numFrames, final int validBits, final long sampleRate,
+            final boolean memoryMapped) throws IOException, WavFileException
     {
         // Instantiate new Wavfile and initialise
         final WavFile wavFile = new WavFile();
@@ -112,8 +154,10 @@ public class WavFile
             throw new WavFileException("Sample rate must be positive");
         }
 
-        // Create output stream for writing data
-        wavFile.oStream = new FileOutputStream(file);
+        // Open a channel for writing data, mapping a window for writing needs read access too
+        wavFile.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
 
         // Calculate the chunk sizes
         final long dataChunkSize = wavFile.blockAlign * numFrames;
@@ -133,13 +177,37 @@ public class WavFile
             wavFile.wordAlignAdjust = false;
         }
 
-        // Set the main chunk size
-        putLE(RIFF_CHUNK_ID, wavFile.buffer, 0, 4);
-        putLE(mainChunkSize, wavFile.buffer, 4, 4);
-        putLE(RIFF_TYPE_ID, wavFile.buffer, 8, 4);
+        // Sizes that do not fit in 4 bytes go in a ds64 chunk of an RF64 file,
+        // the 4 byte size fields are then set to 0xFFFFFFFF
+        final boolean rf64 = mainChunkSize + 36 > MAX_CHUNK_SIZE;
 
-        // Write out the header
-        wavFile.oStream.write(wavFile.buffer, 0, 12);
+        if (rf64)
+        {
+            mainChunkSize += 36; // ds64 ID, size and data
+
+            putLE(RF64_CHUNK_ID, wavFile.buffer, 0, 4);
+            putLE(MAX_CHUNK_SIZE, wavFile.buffer, 4, 4);
+            putLE(RIFF_TYPE_ID, wavFile.buffer, 8, 4);
+            putLE(DS64_CHUNK_ID, wavFile.buffer, 12, 4); // Chunk ID
+            putLE(28, wavFile.buffer, 16, 4); // Chunk Data Size
+            putLE(mainChunkSize, wavFile.buffer, 20, 8); // RIFF Size
+            putLE(dataChunkSize, wavFile.buffer, 28, 8); // Data Size
+            putLE(numFrames, wavFile.buffer, 36, 8); // Sample Count
+            putLE(0, wavFile.buffer, 44, 4); // Table Length
+
+            // Write out the header
+            wavFile.writeHeader(48);
+        }
+        else
+        {
+            // Set the main chunk size
+            putLE(RIFF_CHUNK_ID, wavFile.buffer, 0, 4);
+            putLE(mainChunkSize, wavFile.buffer, 4, 4);
+            putLE(RIFF_TYPE_ID, wavFile.buffer, 8, 4);
+
+            // Write out the header
+            wavFile.writeHeader(12);
+        }
 
         // Put format data in buffer
         final long averageBytesPerSecond = sampleRate * wavFile.blockAlign;
@@ -154,14 +222,14 @@ public class WavFile
         putLE(validBits, wavFile.buffer, 22, 2); // Valid Bits
 
         // Write Format Chunk
-        wavFile.oStream.write(wavFile.buffer, 0, 24);
+        wavFile.writeHeader(24);
 
         // Start Data Chunk
         putLE(DATA_CHUNK_ID, wavFile.buffer, 0, 4); // Chunk ID
-        putLE(dataChunkSize, wavFile.buffer, 4, 4); // Chunk Data Size
+        putLE(rf64 ? MAX_CHUNK_SIZE : dataChunkSize, wavFile.buffer, 4, 4); // Chunk Data Size
 
         // Write Format Chunk
-        wavFile.oStream.write(wavFile.buffer, 0, 8);
+        wavFile.writeHeader(8);
 
         // Calculate the scaling factor for converting to a normalised double
         if (wavFile.validBits > 8)
@@ -179,9 +247,31 @@ public class WavFile
             wavFile.floatScale = 0.5 * ((1 << wavFile.validBits) - 1);
         }
 
+        // The local buffer must be able to hold at least one whole frame
+        if (wavFile.blockAlign > wavFile.buffer.length) {
+            wavFile.buffer = new byte[wavFile.blockAlign];
+        }
+
+        wavFile.writeBuffer = ByteBuffer.wrap(wavFile.buffer).order(ByteOrder.LITTLE_ENDIAN);
+        wavFile.encoder = SampleEncoder.forBytesPerSample(wavFile.bytesPerSample);
+        wavFile.dataOffset = wavFile.channel.position();
+
+        // Encode into the file mapping instead of the local buffer
+        if (memoryMapped)
+        {
+            wavFile.memoryMapped = true;
+            wavFile.mappedPosition = wavFile.dataOffset;
+
+            // Size the file for all the frames and the word align byte up front,
+            // the windows are then mapped inside it
+            final long fileSize = wavFile.dataOffset + dataChunkSize
+                    + (wavFile.wordAlignAdjust ? 1 : 0);
+            if (fileSize > wavFile.dataOffset) {
+                wavFile.channel.write(ByteBuffer.allocate(1), fileSize - 1);
+            }
+        }
+
         // Finally, set the IO State
-        wavFile.bufferPointer = 0;
-        wavFile.bytesRead = 0;
         wavFile.frameCounter = 0;
         wavFile.ioState = IOState.WRITING;
 
@@ -189,179 +279,98 @@ public class WavFile
     }
 
     public static WavFile openWavFile(final File file) throws IOException, WavFileException
+    {
+        return openWavFile(file, false);
+    }
+
+    public static WavFile openWavFile(final File file, final boolean memoryMapped)
+            throws IOException, WavFileException
     {
         // Instantiate new Wavfile and store the file reference
         final WavFile wavFile = new WavFile();
         wavFile.file = file;
 
         // Create a new file input stream for reading file data
-        wavFile.iStream = new FileInputStream(file);
-
-        // Read the first 12 bytes of the file
-        int bytesRead = wavFile.iStream.read(wavFile.buffer, 0, 12);
-        if (bytesRead != 12) {
-            throw new WavFileException("Not enough wav file bytes for header");
-        }
-
-        // Extract parts from the header
-        final long riffChunkID = getLE(wavFile.buffer, 0, 4);
-        long chunkSize = getLE(wavFile.buffer, 4, 4);
-        final long riffTypeID = getLE(wavFile.buffer, 8, 4);
-
-        // Check the header bytes contains the correct signature
-        if (riffChunkID != RIFF_CHUNK_ID) {
-            throw new WavFileException("Invalid Wav Header data, incorrect riff chunk ID");
-        }
-        if (riffTypeID != RIFF_TYPE_ID) {
-            throw new WavFileException("Invalid Wav Header data, incorrect riff type ID");
-        }
-
-        // Check that the file size matches the number of bytes listed in header
-        if (file.length() != chunkSize + 8) {
-            throw new WavFileException("Header chunk size (" + chunkSize
-                    + ") does not match file size (" + file.length() + ")");
-        }
+        final FileInputStream fileStream = new FileInputStream(file);
+        wavFile.iStream = fileStream;
+        wavFile.channel = fileStream.getChannel();
 
-        boolean foundFormat = false;
-        boolean foundData = false;
+        // Parse the header, this leaves the stream at the start of the data chunk
+        wavFile.startReading(WavHeader.read(wavFile.iStream, file.length()));
 
-        // Search for the Format and Data Chunks
-        while (true)
+        // Decode straight from the file mapping instead of the local buffer
+        if (memoryMapped)
         {
-            // Read the first 8 bytes of the chunk (ID and chunk size)
-            bytesRead = wavFile.iStream.read(wavFile.buffer, 0, 8);
-            if (bytesRead == -1) {
-                throw new WavFileException("Reached end of file without finding format chunk");
-            }
-            if (bytesRead != 8) {
-                throw new WavFileException("Could not read chunk header");
-            }
-
-            // Extract the chunk ID and Size
-            final long chunkID = getLE(wavFile.buffer, 0, 4);
-            chunkSize = getLE(wavFile.buffer, 4, 4);
-
-            // Word align the chunk size
-            // chunkSize specifies the number of bytes holding data. However,
-            // the data should be word aligned (2 bytes) so we need to calculate
-            // the actual number of bytes in the chunk
-            long numChunkBytes = chunkSize % 2 == 1 ? chunkSize + 1 : chunkSize;
-
-            if (chunkID == FMT_CHUNK_ID)
-            {
-                // Flag that the format chunk has been found
-                foundFormat = true;
-
-                // Read in the header info
-                bytesRead = wavFile.iStream.read(wavFile.buffer, 0, 16);
-
-                // Check this is uncompressed data
-                final int compressionCode = (int) getLE(wavFile.buffer, 0, 2);
-                if (compressionCode != 1) {
-                    throw new WavFileException("Compression Code " + compressionCode
-                            + " not supported");
-                }
-
-                // Extract the format information
-                wavFile.numChannels = (int) getLE(wavFile.buffer, 2, 2);
-                wavFile.sampleRate = getLE(wavFile.buffer, 4, 4);
-                wavFile.blockAlign = (int) getLE(wavFile.buffer, 12, 2);
-                wavFile.validBits = (int) getLE(wavFile.buffer, 14, 2);
-
-                if (wavFile.numChannels == 0) {
-                    throw new WavFileException(
-                            "Number of channels specified in header is equal to zero");
-                }
-                if (wavFile.blockAlign == 0) {
-                    throw new WavFileException(
-                            "Block Align specified in header is equal to zero");
-                }
-                if (wavFile.validBits < 2) {
-                    throw new WavFileException(
-                            "Valid Bits specified in header is less than 2");
-                }
-                if (wavFile.validBits > 64) {
-                    throw new WavFileException(
-                            "Valid Bits specified in header is greater than 64, this is greater than a long can hold");
-                }
-
-                // Calculate the number of bytes required to hold 1 sample
-                wavFile.bytesPerSample = (wavFile.validBits + 7) / 8;
-                if (wavFile.bytesPerSample * wavFile.numChannels != wavFile.blockAlign) {
-                    throw new WavFileException(
-                            "Block Align does not agree with bytes required for validBits and number of channels");
-                }
-
-                // Account for number of format bytes and then skip over
-                // any extra format bytes
-                numChunkBytes -= 16;
-                if (numChunkBytes > 0) {
-                    wavFile.iStream.skip(numChunkBytes);
-                }
-            }
-            else if (chunkID == DATA_CHUNK_ID)
-            {
-                // Check if we've found the format chunk,
-                // If not, throw an exception as we need the format information
-                // before we can read the data chunk
-                if (foundFormat == false) {
-                    throw new WavFileException("Data chunk found before Format chunk");
-                }
+            wavFile.memoryMapped = true;
+            wavFile.mappedPosition = wavFile.dataOffset;
+        }
 
-                // Check that the chunkSize (wav data length) is a multiple of the
-                // block align (bytes per frame)
-                if (chunkSize % wavFile.blockAlign != 0) {
-                    throw new WavFileException(
-                            "Data Chunk size is not multiple of Block Align");
-                }
+        return wavFile;
+    }
 
-                // Calculate the number of frames
-                wavFile.numFrames = chunkSize / wavFile.blockAlign;
+    // Read from a stream that cannot seek, such as standard input. The size fields
+    // may hold the placeholders written by streaming encoders, in which case the
+    // data runs up to the end of the stream and getNumFrames() is not known until
+    // the end has been reached.
+    public static WavFile openWavFile(final InputStream stream)
+            throws IOException, WavFileException
+    {
+        final WavFile wavFile = new WavFile();
+        wavFile.iStream = stream;
 
-                // Flag that we've found the wave data chunk
-                foundData = true;
+        // Parse the header, this leaves the stream at the start of the data chunk
+        wavFile.startReading(WavHeader.read(stream, -1));
 
-                break;
-            }
-            else
-            {
-                // If an unknown chunk ID is found, just skip over the chunk data
-                wavFile.iStream.skip(numChunkBytes);
-            }
-        }
+        return wavFile;
+    }
 
-        // Throw an exception if no data chunk has been found
-        if (foundData == false) {
-            throw new WavFileException("Did not find a data chunk");
-        }
+    // Read only the header of a wav file, without setting up a reader
+    public static WavHeader probe(final Path path) throws IOException, WavFileException
+    {
+        final InputStream stream = Files.newInputStream(path);
 
-        // Calculate the scaling factor for converting to a normalised double
-        if (wavFile.validBits > 8)
+        try
         {
-            // If more than 8 validBits, data is signed
-            // Conversion required dividing by magnitude of max negative value
-            wavFile.floatOffset = 0;
-            wavFile.floatScale = 1 << wavFile.validBits - 1;
-        }
-        else
+            return WavHeader.read(stream, Files.size(path));
+        } finally
         {
-            // Else if 8 or less validBits, data is unsigned
-            // Conversion required dividing by max positive value
-            wavFile.floatOffset = -1;
-            wavFile.floatScale = 0.5 * ((1 << wavFile.validBits) - 1);
+            stream.close();
         }
+    }
 
-        wavFile.bufferPointer = 0;
-        wavFile.bytesRead = 0;
-        wavFile.frameCounter = 0;
-        wavFile.ioState = IOState.READING;
+    private void startReading(final WavHeader header)
+    {
+        this.header = header;
+        this.numChannels = header.getNumChannels();
+        this.sampleRate = header.getSampleRate();
+        this.blockAlign = header.getBlockAlign();
+        this.validBits = header.getValidBits();
+        this.bytesPerSample = header.getBytesPerSample();
+        this.dataOffset = header.getDataOffset();
+
+        // Until the end of a stream of unknown length is found, assume it never ends
+        this.numFrames = header.isNumFramesKnown() ? header.getNumFrames() : Long.MAX_VALUE;
+
+        // Scaling factor for converting to a normalised double
+        this.floatScale = header.getFloatScale();
+        this.floatOffset = header.getFloatOffset();
+
+        // The local buffer must be able to hold at least one whole frame
+        if (this.blockAlign > this.buffer.length) {
+            this.buffer = new byte[this.blockAlign];
+        }
 
-        return wavFile;
+        this.readBuffer = ByteBuffer.wrap(this.buffer).order(ByteOrder.LITTLE_ENDIAN);
+        this.readBuffer.limit(0);
+        this.decoder = SampleDecoder.forHeader(header);
+        this.integerDecoder = SampleDecoder.forIntegerHeader(header);
+        this.frameCounter = 0;
+        this.ioState = IOState.READING;
     }
 
     // Get and Put little endian data from local buffer
     // ------------------------------------------------
-    private static long getLE(final byte[] buffer, int pos, int numBytes)
+    static long getLE(final byte[] buffer, int pos, int numBytes)
     {
         numBytes--;
         pos += numBytes;
@@ -386,48 +395,309 @@ public class WavFile
 
     // Sample Writing and Reading
     // --------------------------
-    private void writeSample(long val) throws IOException
+    private void writeHeader(final int numBytes) throws IOException
     {
-        for (int b = 0; b < this.bytesPerSample; b++)
+        final ByteBuffer header = ByteBuffer.wrap(this.buffer, 0, numBytes);
+        while (header.hasRemaining()) {
+            this.channel.write(header);
+        }
+    }
+
+    // Make sure there is room for at least one whole frame and return the buffer
+    // to encode it into, positioned at the first free byte
+    private ByteBuffer nextWriteFrames() throws IOException, WavFileException
+    {
+        if (this.memoryMapped)
         {
-            if (this.bufferPointer == BUFFER_SIZE)
-            {
-                this.oStream.write(this.buffer, 0, BUFFER_SIZE);
-                this.bufferPointer = 0;
+            if (this.mappedBuffer == null || !this.mappedBuffer.hasRemaining()) {
+                this.mapNextWindow(FileChannel.MapMode.READ_WRITE);
             }
 
-            this.buffer[this.bufferPointer] = (byte) (val & 0xFF);
-            val >>= 8;
-            this.bufferPointer++;
+            return this.mappedBuffer;
         }
+
+        if (this.writeBuffer.remaining() < this.blockAlign) {
+            this.flushWriteBuffer();
+        }
+
+        return this.writeBuffer;
+    }
+
+    // Write out the frames encoded into the local buffer
+    private void flushWriteBuffer() throws IOException
+    {
+        this.writeBuffer.flip();
+        while (this.writeBuffer.hasRemaining()) {
+            this.channel.write(this.writeBuffer);
+        }
+        this.writeBuffer.clear();
     }
 
-    private long readSample() throws IOException, WavFileException
+    // Make sure at least one whole frame is available for decoding and return the
+    // buffer holding it, positioned at the first unread byte. Returns null at the
+    // end of a stream of unknown length.
+    private ByteBuffer nextFrames() throws IOException, WavFileException
     {
-        long val = 0;
+        if (this.memoryMapped)
+        {
+            if (this.mappedBuffer == null || !this.mappedBuffer.hasRemaining()) {
+                this.mapNextWindow(FileChannel.MapMode.READ_ONLY);
+            }
+
+            return this.mappedBuffer;
+        }
 
-        for (int b = 0; b < this.bytesPerSample; b++)
+        if (this.readBuffer.remaining() < this.blockAlign)
         {
-            if (this.bufferPointer == this.bytesRead)
+            // Move any partial frame to the front of the buffer and top it up
+            final InputStream input = this.readAhead != null ? this.readAhead : this.iStream;
+            this.readBuffer.compact();
+            while (this.readBuffer.position() < this.blockAlign)
             {
-                final int read = this.iStream.read(this.buffer, 0, BUFFER_SIZE);
-                if (read == -1) {
-                    throw new WavFileException("Not enough data available");
+                final int read = input.read(this.buffer, this.readBuffer.position(),
+                        this.readBuffer.remaining());
+                if (read == -1)
+                {
+                    if (this.header.isNumFramesKnown()) {
+                        throw new WavFileException("Not enough data available");
+                    }
+
+                    // The end of the stream is the end of the data, drop any partial frame
+                    this.numFrames = this.frameCounter;
+                    this.readBuffer.clear();
+                    this.readBuffer.limit(0);
+                    return null;
                 }
-                this.bytesRead = read;
-                this.bufferPointer = 0;
+                this.readBuffer.position(this.readBuffer.position() + read);
             }
+            this.readBuffer.flip();
+        }
+
+        return this.readBuffer;
+    }
+
+    private void mapNextWindow(final FileChannel.MapMode mode)
+            throws IOException, WavFileException
+    {
+        // A single mapping is limited to 2 GB, so the data chunk is mapped in
+        // windows. Windows hold whole frames so a sample never straddles two.
+        final long dataEnd = this.dataOffset + this.numFrames * this.blockAlign;
+        final long maxWindowSize = MAPPED_WINDOW_SIZE / this.blockAlign * this.blockAlign;
+        final long windowSize = Math.min(dataEnd - this.mappedPosition, maxWindowSize);
+
+        if (windowSize <= 0) {
+            throw new WavFileException("Not enough data available");
+        }
+
+        this.mappedBuffer = this.channel.map(mode, this.mappedPosition, windowSize);
+        this.mappedBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.mappedPosition += windowSize;
+    }
+
+    public boolean isMemoryMapped()
+    {
+        return this.memoryMapped;
+    }
+
+    public int getBufferSize()
+    {
+        return this.buffer.length;
+    }
+
+    // Replace the local read buffer with one of bufferSize bytes. With one or more
+    // readAheadBuffers, a background thread keeps that many more buffers filled
+    // from the input while the current one is decoded. Must be called before
+    // the first read.
+    public void setBuffering(final int bufferSize, final int readAheadBuffers)
+            throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot read from WavFile instance");
+        }
+        if (this.memoryMapped) {
+            throw new IOException("Memory mapped WavFile instance does not use a read buffer");
+        }
+        if (this.readBuffer.hasRemaining() || this.readAhead != null) {
+            throw new IOException("Buffering must be set before reading");
+        }
+        if (bufferSize < this.blockAlign) {
+            throw new WavFileException("Buffer size must hold at least one frame of "
+                    + this.blockAlign + " bytes");
+        }
+        if (readAheadBuffers < 0) {
+            throw new WavFileException("Number of read-ahead buffers must not be negative");
+        }
+
+        this.buffer = new byte[bufferSize];
+        this.readBuffer = ByteBuffer.wrap(this.buffer).order(ByteOrder.LITTLE_ENDIAN);
+        this.readBuffer.limit(0);
+        this.readAheadBuffers = readAheadBuffers;
+
+        if (readAheadBuffers > 0) {
+            this.readAhead = new ReadAheadInputStream(this.iStream, bufferSize, readAheadBuffers);
+        }
+    }
+
+    // Move the read position to the given frame, the next read starts there
+    public void seekToFrame(final long frame) throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot seek in WavFile instance");
+        }
+        if (frame < 0 || frame > this.numFrames) {
+            throw new WavFileException("Frame " + frame + " is outside of the data chunk");
+        }
+
+        final long position = this.dataOffset + frame * this.blockAlign;
 
-            int v = this.buffer[this.bufferPointer];
-            if (b < this.bytesPerSample - 1 || this.bytesPerSample == 1) {
-                v &= 0xFF;
+        if (this.memoryMapped)
+        {
+            // Map a new window from the frame on the next read
+            this.mappedBuffer = null;
+            this.mappedPosition = position;
+        }
+        else if (this.channel != null)
+        {
+            // Drop whatever is left in the local buffer and move the stream,
+            // the background reader has to restart from the new position
+            if (this.readAhead != null) {
+                this.readAhead.stop();
             }
-            val += v << b * 8;
 
-            this.bufferPointer++;
+            this.channel.position(position);
+            this.readBuffer.limit(0);
+
+            if (this.readAhead != null) {
+                this.readAhead = new ReadAheadInputStream(this.iStream, this.buffer.length,
+                        this.readAheadBuffers);
+            }
         }
+        else
+        {
+            // A plain stream can only move forward, by reading and dropping frames
+            if (frame < this.frameCounter) {
+                throw new WavFileException("Cannot seek backwards in a stream");
+            }
 
-        return val;
+            while (this.frameCounter < frame)
+            {
+                final ByteBuffer source = this.nextFrames();
+                if (source == null) {
+                    throw new WavFileException("Frame " + frame + " is outside of the data chunk");
+                }
+
+                final int frames = (int) Math.min(frame - this.frameCounter,
+                        source.remaining() / this.blockAlign);
+                source.position(source.position() + frames * this.blockAlign);
+                this.frameCounter += frames;
+            }
+        }
+
+        this.frameCounter = frame;
+    }
+
+    // Raw data views
+    // --------------
+    // Read-only little endian views of the PCM data, mapped straight from the file.
+    // They do not depend on or move the current read position.
+    public ByteBuffer getDataBuffer() throws IOException, WavFileException
+    {
+        if (this.numFrames > Integer.MAX_VALUE / this.blockAlign) {
+            throw new WavFileException("Data chunk is too large for a single buffer");
+        }
+
+        return this.getDataBuffer(0, (int) this.numFrames);
+    }
+
+    public ByteBuffer getDataBuffer(final long startFrame, final int numFramesToMap)
+            throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot read from WavFile instance");
+        }
+        if (this.channel == null) {
+            throw new IOException("Cannot map data of a WavFile read from a stream");
+        }
+        if (startFrame < 0 || numFramesToMap < 0 || startFrame + numFramesToMap > this.numFrames) {
+            throw new WavFileException("Frame range is outside of the data chunk");
+        }
+        if (numFramesToMap > Integer.MAX_VALUE / this.blockAlign) {
+            throw new WavFileException("Frame range is too large for a single buffer");
+        }
+
+        final ByteBuffer data = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                this.dataOffset + startFrame * this.blockAlign,
+                (long) numFramesToMap * this.blockAlign);
+
+        return data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public ShortBuffer getDataShortBuffer() throws IOException, WavFileException
+    {
+        if (this.bytesPerSample != 2) {
+            throw new WavFileException("Short view requires 2 bytes per sample, found "
+                    + this.bytesPerSample);
+        }
+
+        return this.getDataBuffer().asShortBuffer();
+    }
+
+    // Chunk index
+    // -----------
+    // Offsets and sizes of every chunk in the file, including those after the data
+    // chunk. The index is built on first use from the chunk headers alone, and the
+    // typed accessors read just the payload of the chunk they need.
+    public List<RiffChunk> getChunks() throws IOException, WavFileException
+    {
+        return this.getChunkIndex().getChunks();
+    }
+
+    // Returns null if the file has no chunk with the given four character ID
+    public RiffChunk findChunk(final String id) throws IOException, WavFileException
+    {
+        return this.getChunkIndex().find(id);
+    }
+
+    public List<CuePoint> getCuePoints() throws IOException, WavFileException
+    {
+        return this.getChunkIndex().readCuePoints();
+    }
+
+    public List<SampleLoop> getSampleLoops() throws IOException, WavFileException
+    {
+        return this.getChunkIndex().readSampleLoops();
+    }
+
+    // Returns null if the file has no bext chunk
+    public BroadcastExtension getBroadcastExtension() throws IOException, WavFileException
+    {
+        return this.getChunkIndex().readBroadcastExtension();
+    }
+
+    private RiffChunkIndex getChunkIndex() throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot read from WavFile instance");
+        }
+        if (this.channel == null) {
+            throw new IOException("Cannot index chunks of a WavFile read from a stream");
+        }
+
+        if (this.chunkIndex == null) {
+            this.chunkIndex = RiffChunkIndex.read(this.channel, this.header);
+        }
+
+        return this.chunkIndex;
+    }
+
+    // Floating point samples can only be read into double and float buffers
+    private SampleDecoder.IntegerDecoder getIntegerDecoder() throws WavFileException
+    {
+        if (this.integerDecoder == null) {
+            throw new WavFileException("Floating point samples cannot be read as integers");
+        }
+
+        return this.integerDecoder;
     }
 
     // Integer
@@ -446,22 +716,31 @@ public class WavFile
             throw new IOException("Cannot read from WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToRead; f++)
+        final SampleDecoder.IntegerDecoder decoder = this.getIntegerDecoder();
+
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
-            for (int c = 0; c < this.numChannels; c++)
-            {
-                sampleBuffer[offset] = (int) this.readSample();
-                offset++;
-            }
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
 
-            this.frameCounter++;
+            decoder.decode(source, position, this.bytesPerSample, sampleBuffer, offset,
+                    samples);
+
+            source.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToRead;
+        return framesToRead;
     }
 
     public int readFrames(final int[][] sampleBuffer, final int numFramesToRead)
@@ -478,21 +757,32 @@ public class WavFile
             throw new IOException("Cannot read from WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToRead; f++)
+        final SampleDecoder.IntegerDecoder decoder = this.getIntegerDecoder();
+
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+
             for (int c = 0; c < this.numChannels; c++) {
-                sampleBuffer[c][offset] = (int) this.readSample();
+                decoder.decode(source, position + c * this.bytesPerSample, this.blockAlign,
+                        sampleBuffer[c], offset, frames);
             }
 
-            offset++;
-            this.frameCounter++;
+            source.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToRead;
+        return framesToRead;
     }
 
     public int writeFrames(final int[] sampleBuffer, final int numFramesToWrite)
@@ -509,22 +799,26 @@ public class WavFile
             throw new IOException("Cannot write to WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToWrite; f++)
-        {
-            if (this.frameCounter == this.numFrames) {
-                return f;
-            }
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
 
-            for (int c = 0; c < this.numChannels; c++)
-            {
-                this.writeSample(sampleBuffer[offset]);
-                offset++;
-            }
-
-            this.frameCounter++;
+        for (int f = 0; f < framesToWrite;)
+        {
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
+
+            this.encoder.encode(sampleBuffer, offset, target, position, this.bytesPerSample,
+                    samples);
+
+            target.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToWrite;
+        return framesToWrite;
     }
 
     public int writeFrames(final int[][] sampleBuffer, final int numFramesToWrite)
@@ -542,21 +836,27 @@ public class WavFile
             throw new IOException("Cannot write to WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToWrite; f++)
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
+
+        for (int f = 0; f < framesToWrite;)
         {
-            if (this.frameCounter == this.numFrames) {
-                return f;
-            }
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
 
             for (int c = 0; c < this.numChannels; c++) {
-                this.writeSample(sampleBuffer[c][offset]);
+                this.encoder.encode(sampleBuffer[c], offset, target,
+                        position + c * this.bytesPerSample, this.blockAlign, frames);
             }
 
-            offset++;
-            this.frameCounter++;
+            target.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToWrite;
+        return framesToWrite;
     }
 
     // Long
@@ -575,22 +875,31 @@ public class WavFile
             throw new IOException("Cannot read from WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToRead; f++)
+        final SampleDecoder.IntegerDecoder decoder = this.getIntegerDecoder();
+
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
-            for (int c = 0; c < this.numChannels; c++)
-            {
-                sampleBuffer[offset] = this.readSample();
-                offset++;
-            }
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
 
-            this.frameCounter++;
+            decoder.decode(source, position, this.bytesPerSample, sampleBuffer, offset,
+                    samples);
+
+            source.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToRead;
+        return framesToRead;
     }
 
     public int readFrames(final long[][] sampleBuffer, final int numFramesToRead)
@@ -607,21 +916,32 @@ public class WavFile
             throw new IOException("Cannot read from WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToRead; f++)
+        final SampleDecoder.IntegerDecoder decoder = this.getIntegerDecoder();
+
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+
             for (int c = 0; c < this.numChannels; c++) {
-                sampleBuffer[c][offset] = this.readSample();
+                decoder.decode(source, position + c * this.bytesPerSample, this.blockAlign,
+                        sampleBuffer[c], offset, frames);
             }
 
-            offset++;
-            this.frameCounter++;
+            source.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToRead;
+        return framesToRead;
     }
 
     public int writeFrames(final long[] sampleBuffer, final int numFramesToWrite)
@@ -638,22 +958,26 @@ public class WavFile
             throw new IOException("Cannot write to WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToWrite; f++)
-        {
-            if (this.frameCounter == this.numFrames) {
-                return f;
-            }
-
-            for (int c = 0; c < this.numChannels; c++)
-            {
-                this.writeSample(sampleBuffer[offset]);
-                offset++;
-            }
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
 
-            this.frameCounter++;
+        for (int f = 0; f < framesToWrite;)
+        {
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
+
+            this.encoder.encode(sampleBuffer, offset, target, position, this.bytesPerSample,
+                    samples);
+
+            target.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToWrite;
+        return framesToWrite;
     }
 
     public int writeFrames(final long[][] sampleBuffer, final int numFramesToWrite)
@@ -671,21 +995,27 @@ public class WavFile
             throw new IOException("Cannot write to WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToWrite; f++)
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
+
+        for (int f = 0; f < framesToWrite;)
         {
-            if (this.frameCounter == this.numFrames) {
-                return f;
-            }
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
 
             for (int c = 0; c < this.numChannels; c++) {
-                this.writeSample(sampleBuffer[c][offset]);
+                this.encoder.encode(sampleBuffer[c], offset, target,
+                        position + c * this.bytesPerSample, this.blockAlign, frames);
             }
 
-            offset++;
-            this.frameCounter++;
+            target.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToWrite;
+        return framesToWrite;
     }
 
     // Double
@@ -704,22 +1034,29 @@ public class WavFile
             throw new IOException("Cannot read from WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToRead; f++)
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
-            for (int c = 0; c < this.numChannels; c++)
-            {
-                sampleBuffer[offset] = this.floatOffset + this.readSample() / this.floatScale;
-                offset++;
-            }
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
 
-            this.frameCounter++;
+            this.decoder.decode(source, position, this.bytesPerSample, sampleBuffer, offset,
+                    samples, this.floatOffset, this.floatScale);
+
+            source.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToRead;
+        return framesToRead;
     }
 
     public int readFrames(final double[][] sampleBuffer, final int numFramesToRead)
@@ -737,22 +1074,28 @@ public class WavFile
             throw new IOException("Cannot read from WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToRead; f++)
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
-            for (int c = 0; c < this.numChannels; c++) {
-                sampleBuffer[c][offset] =
-                        this.floatOffset + this.readSample() / this.floatScale;
-            }
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+
+            this.decoder.deinterleave(source, position, this.numChannels, this.bytesPerSample,
+                    sampleBuffer, offset, frames, this.floatOffset, this.floatScale);
 
-            offset++;
-            this.frameCounter++;
+            source.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToRead;
+        return framesToRead;
     }
 
     public int writeFrames(final double[] sampleBuffer, final int numFramesToWrite)
@@ -770,32 +1113,193 @@ public class WavFile
             throw new IOException("Cannot write to WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToWrite; f++)
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
+
+        for (int f = 0; f < framesToWrite;)
+        {
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
+
+            this.encoder.encode(sampleBuffer, offset, target, position, this.bytesPerSample,
+                    samples, this.floatOffset, this.floatScale);
+
+            target.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
+        }
+
+        return framesToWrite;
+    }
+
+    public int writeFrames(final double[][] sampleBuffer, final int numFramesToWrite)
+            throws IOException,
+            WavFileException
+    {
+        return this.writeFrames(sampleBuffer, 0, numFramesToWrite);
+    }
+
+    public int writeFrames(final double[][] sampleBuffer, int offset,
+            final int numFramesToWrite)
+            throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.WRITING) {
+            throw new IOException("Cannot write to WavFile instance");
+        }
+
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
+
+        for (int f = 0; f < framesToWrite;)
         {
-            if (this.frameCounter == this.numFrames) {
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
+
+            for (int c = 0; c < this.numChannels; c++) {
+                this.encoder.encode(sampleBuffer[c], offset, target,
+                        position + c * this.bytesPerSample, this.blockAlign, frames,
+                        this.floatOffset, this.floatScale);
+            }
+
+            target.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
+        }
+
+        return framesToWrite;
+    }
+
+    // Float
+    // -----
+    // Half the footprint of double buffers, each sample is rounded to float once
+    public int readFrames(final float[] sampleBuffer, final int numFramesToRead)
+            throws IOException,
+            WavFileException
+    {
+        return this.readFrames(sampleBuffer, 0, numFramesToRead);
+    }
+
+    public int readFrames(final float[] sampleBuffer, int offset, final int numFramesToRead)
+            throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot read from WavFile instance");
+        }
+
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
+        {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
                 return f;
             }
 
-            for (int c = 0; c < this.numChannels; c++)
-            {
-                this.writeSample((long) (this.floatScale * (this.floatOffset + sampleBuffer[offset])));
-                offset++;
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
+
+            this.decoder.decode(source, position, this.bytesPerSample, sampleBuffer, offset,
+                    samples, this.floatOffset, this.floatScale);
+
+            source.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
+        }
+
+        return framesToRead;
+    }
+
+    public int readFrames(final float[][] sampleBuffer, final int numFramesToRead)
+            throws IOException,
+            WavFileException
+    {
+        return this.readFrames(sampleBuffer, 0, numFramesToRead);
+    }
+
+    public int
+            readFrames(final float[][] sampleBuffer, int offset, final int numFramesToRead)
+                    throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot read from WavFile instance");
+        }
+
+        final int framesToRead = (int) Math.min(numFramesToRead, this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
+        {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
+                return f;
             }
 
-            this.frameCounter++;
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+
+            this.decoder.deinterleave(source, position, this.numChannels, this.bytesPerSample,
+                    sampleBuffer, offset, frames, this.floatOffset, this.floatScale);
+
+            source.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToWrite;
+        return framesToRead;
     }
 
-    public int writeFrames(final double[][] sampleBuffer, final int numFramesToWrite)
+    public int writeFrames(final float[] sampleBuffer, final int numFramesToWrite)
             throws IOException,
             WavFileException
     {
         return this.writeFrames(sampleBuffer, 0, numFramesToWrite);
     }
 
-    public int writeFrames(final double[][] sampleBuffer, int offset,
+    public int
+            writeFrames(final float[] sampleBuffer, int offset, final int numFramesToWrite)
+                    throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.WRITING) {
+            throw new IOException("Cannot write to WavFile instance");
+        }
+
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
+
+        for (int f = 0; f < framesToWrite;)
+        {
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
+            final int samples = frames * this.numChannels;
+
+            this.encoder.encode(sampleBuffer, offset, target, position, this.bytesPerSample,
+                    samples, this.floatOffset, this.floatScale);
+
+            target.position(position + frames * this.blockAlign);
+            offset += samples;
+            f += frames;
+            this.frameCounter += frames;
+        }
+
+        return framesToWrite;
+    }
+
+    public int writeFrames(final float[][] sampleBuffer, final int numFramesToWrite)
+            throws IOException,
+            WavFileException
+    {
+        return this.writeFrames(sampleBuffer, 0, numFramesToWrite);
+    }
+
+    public int writeFrames(final float[][] sampleBuffer, int offset,
             final int numFramesToWrite)
             throws IOException, WavFileException
     {
@@ -803,49 +1307,103 @@ public class WavFile
             throw new IOException("Cannot write to WavFile instance");
         }
 
-        for (int f = 0; f < numFramesToWrite; f++)
+        final int framesToWrite =
+                (int) Math.min(numFramesToWrite, this.numFrames - this.frameCounter);
+
+        for (int f = 0; f < framesToWrite;)
         {
-            if (this.frameCounter == this.numFrames) {
-                return f;
-            }
+            final ByteBuffer target = this.nextWriteFrames();
+            final int position = target.position();
+            final int frames = Math.min(framesToWrite - f, target.remaining() / this.blockAlign);
 
             for (int c = 0; c < this.numChannels; c++) {
-                this.writeSample((long) (this.floatScale * (this.floatOffset + sampleBuffer[c][offset])));
+                this.encoder.encode(sampleBuffer[c], offset, target,
+                        position + c * this.bytesPerSample, this.blockAlign, frames,
+                        this.floatOffset, this.floatScale);
             }
 
-            offset++;
-            this.frameCounter++;
+            target.position(position + frames * this.blockAlign);
+            offset += frames;
+            f += frames;
+            this.frameCounter += frames;
         }
 
-        return numFramesToWrite;
+        return framesToWrite;
+    }
+
+    // Raw bytes
+    // ---------
+    // Copies the undecoded little endian frames into dst, as many as fit
+    public int readFrames(final ByteBuffer dst, final int numFramesToRead)
+            throws IOException, WavFileException
+    {
+        if (this.ioState != IOState.READING) {
+            throw new IOException("Cannot read from WavFile instance");
+        }
+
+        final int framesToRead = (int) Math.min(
+                Math.min(numFramesToRead, dst.remaining() / this.blockAlign),
+                this.getFramesRemaining());
+
+        for (int f = 0; f < framesToRead;)
+        {
+            final ByteBuffer source = this.nextFrames();
+            if (source == null) {
+                return f;
+            }
+
+            final int position = source.position();
+            final int frames = Math.min(framesToRead - f, source.remaining() / this.blockAlign);
+            final ByteBuffer block = source.duplicate();
+
+            block.limit(position + frames * this.blockAlign);
+            dst.put(block);
+
+            source.position(position + frames * this.blockAlign);
+            f += frames;
+            this.frameCounter += frames;
+        }
+
+        return framesToRead;
     }
 
     public void close() throws IOException
     {
-        // Close the input stream and set to null
+        // Stop reading ahead, this also closes the input stream
+        if (this.readAhead != null)
+        {
+            this.readAhead.close();
+            this.readAhead = null;
+        }
+
+        // Close the input stream and set to null, this also closes the channel
         if (this.iStream != null)
         {
             this.iStream.close();
             this.iStream = null;
         }
 
-        if (this.oStream != null)
+        if (this.ioState == IOState.WRITING && this.channel != null)
         {
-            // Write out anything still in the local buffer
-            if (this.bufferPointer > 0) {
-                this.oStream.write(this.buffer, 0, this.bufferPointer);
-            }
+            // Write out anything still in the local buffer. A mapped file was sized
+            // with the word align byte already.
+            if (!this.memoryMapped)
+            {
+                this.flushWriteBuffer();
 
-            // If an extra byte is required for word alignment, add it to the end
-            if (this.wordAlignAdjust) {
-                this.oStream.write(0);
+                // If an extra byte is required for word alignment, add it to the end
+                if (this.wordAlignAdjust) {
+                    this.channel.write(ByteBuffer.allocate(1));
+                }
             }
 
-            // Close the stream and set to null
-            this.oStream.close();
-            this.oStream = null;
+            // Close the channel
+            this.channel.close();
         }
 
+        this.channel = null;
+        this.mappedBuffer = null;
+
         // Flag that the stream is closed
         this.ioState = IOState.CLOSED;
     }
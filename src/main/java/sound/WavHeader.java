@@ -0,0 +1,391 @@
+package sound;
+
+// Immutable description of a wav file, parsed from the RIFF header
+// A header can be shared freely between threads, it records everything that
+// is needed to locate and decode any frame of the data chunk.
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class WavHeader
+{
+    public final static long UNKNOWN_NUM_FRAMES = -1;
+
+    // Size written by streaming encoders that cannot go back to fill in the real one
+    private final static long UNKNOWN_CHUNK_SIZE = 0xFFFFFFFFL;
+
+    // Format codes
+    private final static int WAVE_FORMAT_PCM = 0x0001;
+    private final static int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    private final static int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final int numChannels; // Number of interleaved channels
+    private final long sampleRate; // Frames per second
+    private final int blockAlign; // Bytes per frame
+    private final int validBits; // Bits per sample
+    private final boolean floatingPoint; // Samples are IEEE floats instead of integers
+    private final int bytesPerSample; // Bytes required to store a single sample
+    private final long numFrames; // Number of frames within the data chunk, or UNKNOWN_NUM_FRAMES
+    private final long dataOffset; // Offset of the first data byte from the start of the stream
+
+    private WavHeader(final int numChannels, final long sampleRate, final int blockAlign,
+            final int validBits, final boolean floatingPoint, final long numFrames,
+            final long dataOffset)
+    {
+        this.numChannels = numChannels;
+        this.sampleRate = sampleRate;
+        this.blockAlign = blockAlign;
+        this.validBits = validBits;
+        this.floatingPoint = floatingPoint;
+        this.bytesPerSample = (validBits + 7) / 8;
+        this.numFrames = numFrames;
+        this.dataOffset = dataOffset;
+    }
+
+    public int getNumChannels()
+    {
+        return this.numChannels;
+    }
+
+    public long getSampleRate()
+    {
+        return this.sampleRate;
+    }
+
+    public int getBlockAlign()
+    {
+        return this.blockAlign;
+    }
+
+    public int getValidBits()
+    {
+        return this.validBits;
+    }
+
+    public boolean isFloatingPoint()
+    {
+        return this.floatingPoint;
+    }
+
+    public int getBytesPerSample()
+    {
+        return this.bytesPerSample;
+    }
+
+    public long getNumFrames()
+    {
+        return this.numFrames;
+    }
+
+    public boolean isNumFramesKnown()
+    {
+        return this.numFrames != UNKNOWN_NUM_FRAMES;
+    }
+
+    public long getDataOffset()
+    {
+        return this.dataOffset;
+    }
+
+    // Scaling factors for converting samples to a normalised double
+    // -------------------------------------------------------------
+    double getFloatScale()
+    {
+        if (this.floatingPoint) {
+            // Floating point data is normalised already
+            return 1;
+        }
+        if (this.validBits > 8) {
+            // If more than 8 validBits, data is signed
+            // Conversion required dividing by magnitude of max negative value
+            return 1 << this.validBits - 1;
+        }
+
+        // Else if 8 or less validBits, data is unsigned
+        // Conversion required dividing by max positive value
+        return 0.5 * ((1 << this.validBits) - 1);
+    }
+
+    double getFloatOffset()
+    {
+        return this.validBits > 8 || this.floatingPoint ? 0 : -1;
+    }
+
+    // The value readFrames returns in a double buffer for a raw integer sample
+    public double getNormalizedSample(final long sample)
+    {
+        return this.getFloatOffset() + sample / this.getFloatScale();
+    }
+
+    // Parse the header from the start of a stream, leaving the stream positioned
+    // at the first byte of the data chunk. streamLength is the total number of
+    // bytes in the stream, it is checked against the size in the RIFF header.
+    // A negative streamLength means the length of the stream is not known.
+    static WavHeader read(final InputStream in, final long streamLength)
+            throws IOException, WavFileException
+    {
+        final byte[] buffer = new byte[28];
+        long position = 0;
+
+        // Read the first 12 bytes of the file
+        int bytesRead = readFully(in, buffer, 12);
+        if (bytesRead != 12) {
+            throw new WavFileException("Not enough wav file bytes for header");
+        }
+        position += bytesRead;
+
+        // Extract parts from the header
+        final long riffChunkID = WavFile.getLE(buffer, 0, 4);
+        long chunkSize = WavFile.getLE(buffer, 4, 4);
+        final long riffTypeID = WavFile.getLE(buffer, 8, 4);
+
+        // Check the header bytes contains the correct signature, RF64 and BW64
+        // files keep their 64 bit sizes in a ds64 chunk that must come first
+        final boolean rf64 =
+                riffChunkID == WavFile.RF64_CHUNK_ID || riffChunkID == WavFile.BW64_CHUNK_ID;
+        if (riffChunkID != WavFile.RIFF_CHUNK_ID && !rf64) {
+            throw new WavFileException("Invalid Wav Header data, incorrect riff chunk ID");
+        }
+        if (riffTypeID != WavFile.RIFF_TYPE_ID) {
+            throw new WavFileException("Invalid Wav Header data, incorrect riff type ID");
+        }
+
+        long dataSize64 = 0;
+        if (rf64)
+        {
+            bytesRead = readFully(in, buffer, 8);
+            if (bytesRead != 8 || WavFile.getLE(buffer, 0, 4) != WavFile.DS64_CHUNK_ID) {
+                throw new WavFileException("RF64 file does not start with a ds64 chunk");
+            }
+            position += bytesRead;
+
+            final long ds64Size = WavFile.getLE(buffer, 4, 4);
+            if (ds64Size < 24) {
+                throw new WavFileException("ds64 chunk is too small");
+            }
+
+            bytesRead = readFully(in, buffer, 24);
+            if (bytesRead != 24) {
+                throw new WavFileException("Could not read ds64 chunk");
+            }
+            position += bytesRead;
+
+            // Replace the 4 byte sizes, the sample count and the chunk size
+            // table are not needed
+            chunkSize = WavFile.getLE(buffer, 0, 8);
+            dataSize64 = WavFile.getLE(buffer, 8, 8);
+
+            final long numChunkBytes = ds64Size % 2 == 1 ? ds64Size + 1 : ds64Size;
+            position += skipFully(in, numChunkBytes - 24);
+        }
+
+        // Check that the file size matches the number of bytes listed in header
+        final boolean riffSizeUnknown =
+                chunkSize == 0 || !rf64 && chunkSize == UNKNOWN_CHUNK_SIZE;
+        if (streamLength >= 0 && !riffSizeUnknown && streamLength != chunkSize + 8) {
+            throw new WavFileException("Header chunk size (" + chunkSize
+                    + ") does not match file size (" + streamLength + ")");
+        }
+
+        boolean foundFormat = false;
+        int numChannels = 0;
+        long sampleRate = 0;
+        int blockAlign = 0;
+        int validBits = 0;
+        boolean floatingPoint = false;
+
+        // Search for the Format and Data Chunks
+        while (true)
+        {
+            // Read the first 8 bytes of the chunk (ID and chunk size)
+            bytesRead = readFully(in, buffer, 8);
+            if (bytesRead == 0) {
+                throw new WavFileException("Reached end of file without finding format chunk");
+            }
+            if (bytesRead != 8) {
+                throw new WavFileException("Could not read chunk header");
+            }
+            position += bytesRead;
+
+            // Extract the chunk ID and Size
+            final long chunkID = WavFile.getLE(buffer, 0, 4);
+            chunkSize = WavFile.getLE(buffer, 4, 4);
+
+            // The real size of an RF64 data chunk is in the ds64 chunk
+            if (rf64 && chunkID == WavFile.DATA_CHUNK_ID && chunkSize == UNKNOWN_CHUNK_SIZE) {
+                chunkSize = dataSize64;
+            }
+
+            // Word align the chunk size
+            // chunkSize specifies the number of bytes holding data. However,
+            // the data should be word aligned (2 bytes) so we need to calculate
+            // the actual number of bytes in the chunk
+            long numChunkBytes = chunkSize % 2 == 1 ? chunkSize + 1 : chunkSize;
+
+            if (chunkID == WavFile.FMT_CHUNK_ID)
+            {
+                // Flag that the format chunk has been found
+                foundFormat = true;
+
+                // Read in the header info
+                bytesRead = readFully(in, buffer, 16);
+                if (bytesRead != 16) {
+                    throw new WavFileException("Could not read format chunk");
+                }
+                position += bytesRead;
+
+                // Extract the format information
+                int compressionCode = (int) WavFile.getLE(buffer, 0, 2);
+                numChannels = (int) WavFile.getLE(buffer, 2, 2);
+                sampleRate = WavFile.getLE(buffer, 4, 4);
+                blockAlign = (int) WavFile.getLE(buffer, 12, 2);
+                validBits = (int) WavFile.getLE(buffer, 14, 2);
+                numChunkBytes -= 16;
+
+                // The extensible format keeps the actual format code in the first
+                // 2 bytes of its sub format GUID, after the extension size (2),
+                // the valid bits (2) and the channel mask (4). Samples are always
+                // stored in containers of the size given above.
+                if (compressionCode == WAVE_FORMAT_EXTENSIBLE)
+                {
+                    if (numChunkBytes < 24) {
+                        throw new WavFileException("Extensible format chunk is too small");
+                    }
+
+                    bytesRead = readFully(in, buffer, 24);
+                    if (bytesRead != 24) {
+                        throw new WavFileException("Could not read format chunk");
+                    }
+                    position += bytesRead;
+                    numChunkBytes -= 24;
+
+                    compressionCode = (int) WavFile.getLE(buffer, 8, 2);
+                }
+
+                // Check this is uncompressed data
+                if (compressionCode != WAVE_FORMAT_PCM && compressionCode != WAVE_FORMAT_IEEE_FLOAT) {
+                    throw new WavFileException("Compression Code " + compressionCode
+                            + " not supported");
+                }
+
+                floatingPoint = compressionCode == WAVE_FORMAT_IEEE_FLOAT;
+                if (floatingPoint && validBits != 32 && validBits != 64) {
+                    throw new WavFileException(
+                            "Floating point samples must be 32 or 64 bits, found " + validBits);
+                }
+
+                if (numChannels == 0) {
+                    throw new WavFileException(
+                            "Number of channels specified in header is equal to zero");
+                }
+                if (blockAlign == 0) {
+                    throw new WavFileException(
+                            "Block Align specified in header is equal to zero");
+                }
+                if (validBits < 2) {
+                    throw new WavFileException(
+                            "Valid Bits specified in header is less than 2");
+                }
+                if (validBits > 64) {
+                    throw new WavFileException(
+                            "Valid Bits specified in header is greater than 64, this is greater than a long can hold");
+                }
+
+                // Check the number of bytes required to hold 1 sample
+                if ((validBits + 7) / 8 * numChannels != blockAlign) {
+                    throw new WavFileException(
+                            "Block Align does not agree with bytes required for validBits and number of channels");
+                }
+
+                // Skip over any extra format bytes
+                if (numChunkBytes > 0) {
+                    position += skipFully(in, numChunkBytes);
+                }
+            }
+            else if (chunkID == WavFile.DATA_CHUNK_ID)
+            {
+                // Check if we've found the format chunk,
+                // If not, throw an exception as we need the format information
+                // before we can read the data chunk
+                if (foundFormat == false) {
+                    throw new WavFileException("Data chunk found before Format chunk");
+                }
+
+                // Without a real data size, everything up to the end of the stream is data
+                if (chunkSize == UNKNOWN_CHUNK_SIZE || chunkSize == 0 && riffSizeUnknown)
+                {
+                    final long numFrames = streamLength < 0 ? UNKNOWN_NUM_FRAMES
+                            : (streamLength - position) / blockAlign;
+
+                    return new WavHeader(numChannels, sampleRate, blockAlign, validBits,
+                            floatingPoint, numFrames, position);
+                }
+
+                // Check that the chunkSize (wav data length) is a multiple of the
+                // block align (bytes per frame)
+                if (chunkSize % blockAlign != 0) {
+                    throw new WavFileException(
+                            "Data Chunk size is not multiple of Block Align");
+                }
+
+                // Calculate the number of frames, the data starts right here
+                return new WavHeader(numChannels, sampleRate, blockAlign, validBits,
+                        floatingPoint, chunkSize / blockAlign, position);
+            }
+            else
+            {
+                // If an unknown chunk ID is found, just skip over the chunk data
+                position += skipFully(in, numChunkBytes);
+            }
+        }
+    }
+
+    // Read until numBytes have been read or the end of the stream is reached
+    private static int readFully(final InputStream in, final byte[] buffer, final int numBytes)
+            throws IOException
+    {
+        int total = 0;
+
+        while (total < numBytes)
+        {
+            final int read = in.read(buffer, total, numBytes - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+
+        return total;
+    }
+
+    // Skip numBytes or up to the end of the stream, InputStream.skip may skip
+    // fewer bytes than asked for
+    private static long skipFully(final InputStream in, final long numBytes) throws IOException
+    {
+        long total = 0;
+
+        while (total < numBytes)
+        {
+            final long skipped = in.skip(numBytes - total);
+            if (skipped > 0) {
+                total += skipped;
+            }
+            else if (in.read() == -1) {
+                break;
+            }
+            else {
+                total++;
+            }
+        }
+
+        return total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Channels: %d, Frames: %d, Sample Rate: %d, Block Align: %d, "
+                + "Valid Bits: %d, Floating Point: %b", this.numChannels, this.numFrames,
+                this.sampleRate, this.blockAlign, this.validBits, this.floatingPoint);
+    }
+}